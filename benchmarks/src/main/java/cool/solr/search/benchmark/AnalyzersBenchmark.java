@@ -0,0 +1,115 @@
+package cool.solr.search.benchmark;
+
+import cool.solr.search.component.solr.util.EmbeddedCoreFixture;
+import cool.solr.search.solr.util.analyzing.AnalysisCache;
+import cool.solr.search.solr.util.analyzing.AnalysisContext;
+import cool.solr.search.solr.util.analyzing.Analyzers;
+import cool.solr.search.solr.util.analyzing.Token;
+import cool.solr.search.solr.util.analyzing.TokenBuffer;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the {@link Analyzers} helpers, the reusable {@link AnalysisContext} and the
+ * {@link AnalysisCache} with short, query-like inputs. All inputs fit into the cache.
+ * <p>
+ * Run with <code>-prof gc</code> to get allocation rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AnalyzersBenchmark {
+
+    /**
+     * Number of words per analyzed input.
+     */
+    @Param({"3", "20"})
+    public int words;
+
+    private Analyzer analyzer;
+    private final TokenBuffer buffer = new TokenBuffer();
+    private AnalysisContext context;
+    private AnalysisCache cache;
+    private String[] inputs;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        analyzer = new StandardAnalyzer();
+        context = new AnalysisContext(analyzer);
+        cache = new AnalysisCache(1024, 1024 * 1024);
+
+        Random random = new Random(42);
+        inputs = new String[128];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = EmbeddedCoreFixture.words(random, words);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        analyzer.close();
+    }
+
+    @Benchmark
+    public List<String> analyze() throws IOException {
+        return Analyzers.analyze(analyzer, nextInput());
+    }
+
+    @Benchmark
+    public String analyzeJoined() throws IOException {
+        return Analyzers.analyze(analyzer, nextInput(), " ");
+    }
+
+    @Benchmark
+    public List<Token> analyzeTokens() throws IOException {
+        return Analyzers.analyzeTokens(analyzer, nextInput());
+    }
+
+    @Benchmark
+    public TokenBuffer analyzeTokensIntoBuffer() throws IOException {
+        return Analyzers.analyzeTokens(analyzer, nextInput(), buffer);
+    }
+
+    @Benchmark
+    public List<String> contextAnalyze() throws IOException {
+        return context.analyze(nextInput());
+    }
+
+    @Benchmark
+    public TokenBuffer contextAnalyzeTokens() throws IOException {
+        return context.analyzeTokens(nextInput());
+    }
+
+    @Benchmark
+    public List<String> cachedAnalyze() throws IOException {
+        return cache.analyze(analyzer, nextInput());
+    }
+
+    @Benchmark
+    public List<Token> cachedAnalyzeTokens() throws IOException {
+        return cache.analyzeTokens(analyzer, nextInput());
+    }
+
+    @Benchmark
+    public void forEachToken(Blackhole blackhole) throws IOException {
+        Analyzers.forEachToken(analyzer, nextInput(), (term, type, startOffset, endOffset, position, positionLength) -> {
+            blackhole.consume(term.length());
+            blackhole.consume(position);
+        });
+    }
+
+    String nextInput() {
+        return inputs[next++ & (inputs.length - 1)];
+    }
+}
@@ -0,0 +1,74 @@
+package cool.solr.search.benchmark;
+
+import cool.solr.search.component.solr.util.EmbeddedCoreFixture;
+import cool.solr.search.solr.util.analyzing.Analyzers;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks analyzing a batch of inputs with {@link Analyzers#analyzeAll} against looping over
+ * {@link Analyzers#analyze(Analyzer, String)}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchAnalysisBenchmark {
+
+    /**
+     * Number of inputs per batch.
+     */
+    @Param({"500"})
+    public int batchSize;
+
+    private Analyzer analyzer;
+    private List<String> inputs;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        analyzer = new StandardAnalyzer();
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+        Random random = new Random(42);
+        inputs = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            inputs.add(EmbeddedCoreFixture.words(random, 1 + random.nextInt(5)));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+        analyzer.close();
+    }
+
+    @Benchmark
+    public List<List<String>> loop() throws IOException {
+        List<List<String>> result = new ArrayList<>(inputs.size());
+        for (String input : inputs) {
+            result.add(Analyzers.analyze(analyzer, input));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<List<String>> analyzeAll() throws IOException {
+        return Analyzers.analyzeAll(analyzer, inputs);
+    }
+
+    @Benchmark
+    public List<List<String>> analyzeAllParallel() throws IOException {
+        return Analyzers.analyzeAll(analyzer, inputs, pool);
+    }
+}
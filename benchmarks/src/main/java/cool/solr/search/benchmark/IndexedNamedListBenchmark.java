@@ -0,0 +1,70 @@
+package cool.solr.search.benchmark;
+
+import cool.solr.search.solr.util.ConvenientNamedList;
+import cool.solr.search.solr.util.IndexedNamedList;
+import org.apache.solr.common.util.NamedList;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks looking up all values of a facet field by name through a {@link ConvenientNamedList} and through an
+ * {@link IndexedNamedList}, and the cost of building the index.
+ * <p>
+ * Run with <code>-prof gc</code> to get allocation rates, <code>gc.alloc.rate.norm</code> of {@link #buildIndex()}
+ * is the memory overhead of the index.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IndexedNamedListBenchmark {
+
+    /**
+     * Number of facet values.
+     */
+    @Param({"10", "1000", "10000"})
+    public int facetValues;
+
+    private NamedList<Object> facetField;
+    private String[] names;
+    private ConvenientNamedList convenient;
+    private IndexedNamedList indexed;
+
+    @Setup
+    public void setUp() {
+        facetField = new NamedList<>();
+        names = new String[facetValues];
+        for (int i = 0; i < facetValues; i++) {
+            names[i] = new String("brand-" + i);
+            facetField.add("brand-" + i, String.valueOf(i));
+        }
+
+        convenient = new ConvenientNamedList(facetField);
+        indexed = new IndexedNamedList(facetField, 1);
+        indexed.getString(names[0]);
+    }
+
+    @Benchmark
+    public void lookupAll(Blackhole blackhole) {
+        for (String name : names) {
+            blackhole.consume(convenient.getString(name));
+        }
+    }
+
+    @Benchmark
+    public void indexedLookupAll(Blackhole blackhole) {
+        for (String name : names) {
+            blackhole.consume(indexed.getString(name));
+        }
+    }
+
+    @Benchmark
+    public Object buildIndex() {
+        IndexedNamedList list = new IndexedNamedList(facetField, 1);
+        return list.getString(names[0]);
+    }
+}
@@ -0,0 +1,297 @@
+package cool.solr.search.benchmark;
+
+import cool.solr.search.component.solr.util.EmbeddedCoreFixture;
+import cool.solr.search.component.solr.util.SolrLocalRequestExecutor;
+import cool.solr.search.component.solr.util.SolrLocalResponseBuilder;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.FacetParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.handler.component.QueryComponent;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks building and executing local sub-requests with {@link SolrLocalResponseBuilder} and
+ * {@link SolrLocalRequestExecutor} against an {@link EmbeddedCoreFixture embedded core}.
+ * <p>
+ * Run with <code>-prof gc</code> to get allocation rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LocalRequestBenchmark {
+
+    /**
+     * Number of documents in the embedded core.
+     */
+    @Param({"10000"})
+    public int numDocs;
+
+    /**
+     * Name of the sub-request result cache in the benchmark core.
+     */
+    static final String CACHE_NAME = "localRequestCache";
+
+    /**
+     * Number of sub-requests of the series benchmarks.
+     */
+    static final int SERIES = 10;
+
+    private EmbeddedCoreFixture fixture;
+    private ResponseBuilder origin;
+    private SolrParams facetParams;
+    private SolrParams jsonFacetParams;
+    private ResponseBuilder preparedOrigin;
+    private SolrParams drillDownParams;
+    private SolrLocalRequestExecutor executor;
+    private ExecutorService asyncExecutor;
+
+    @Setup
+    public void setUp() throws IOException {
+        fixture = new EmbeddedCoreFixture(numDocs);
+        origin = fixture.origin(SolrParamsBenchmark.requestParams());
+
+        // unscored params disable faceting, enable it again for the facet benchmark
+        ModifiableSolrParams params = SolrLocalResponseBuilder.computeUnscoredSolrParams(origin.req.getParams());
+        params.set(FacetParams.FACET, true);
+        facetParams = params;
+
+        // same facets as JSON facets, which the unscored params keep
+        ModifiableSolrParams jsonParams = SolrLocalResponseBuilder.computeUnscoredSolrParams(origin.req.getParams());
+        jsonParams.set("json.facet", "{category:{type:terms,field:category,limit:100,mincount:1},"
+                + "brand:{type:terms,field:brand,limit:100,mincount:1}}");
+        jsonFacetParams = jsonParams;
+
+        executor = new SolrLocalRequestExecutor(3);
+        asyncExecutor = Executors.newFixedThreadPool(3);
+
+        // an origin whose query component already ran, like in a component after the query component
+        preparedOrigin = fixture.origin(SolrParamsBenchmark.requestParams());
+        QueryComponent queryComponent = SolrLocalResponseBuilder.extractQueryComponent(preparedOrigin.components);
+        queryComponent.prepare(preparedOrigin);
+        preparedOrigin.setNeedDocSet(true);
+        queryComponent.process(preparedOrigin);
+
+        ModifiableSolrParams drillDown = SolrLocalResponseBuilder.computeUnscoredSolrParams(preparedOrigin.req.getParams());
+        drillDown.add(CommonParams.FQ, "price:[0 TO 250]");
+        drillDownParams = drillDown;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        executor.close();
+        asyncExecutor.shutdownNow();
+        fixture.close();
+    }
+
+    @Benchmark
+    public ResponseBuilder build() {
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(origin)) {
+            return builder.useUnscoredSolrParams().build();
+        }
+    }
+
+    @Benchmark
+    public long executeUnscored() throws IOException {
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(origin)) {
+            ResponseBuilder response = builder.useUnscoredSolrParams().build();
+            SolrLocalResponseBuilder.execute(response);
+            return response.getResults().docList.matches();
+        }
+    }
+
+    @Benchmark
+    public long executeUnscoredQuery() throws IOException {
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(origin)) {
+            ResponseBuilder response = builder
+                    .useParams(SolrLocalResponseBuilder.computeUnscoredSolrQueryParams(origin.req.getParams()))
+                    .build();
+            SolrLocalResponseBuilder.execute(response);
+            return response.getResults().docList.matches();
+        }
+    }
+
+    @Benchmark
+    public long hitCountUnscored() throws IOException {
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(origin)) {
+            return builder.useUnscoredSolrParams().getHitCount();
+        }
+    }
+
+    /**
+     * Counts with a hit cap, collecting instead of using the filter cache for q.
+     */
+    @Benchmark
+    public long hitCountUnscoredCapped() throws IOException {
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(origin)) {
+            return builder.useUnscoredSolrParams().maxHits(100).getHitCount();
+        }
+    }
+
+    /**
+     * Counts the origin's hits within an additional filter, parsing q and all fq.
+     */
+    @Benchmark
+    public long hitCountDrillDown() throws IOException {
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(preparedOrigin)) {
+            return builder.useParams(drillDownParams).getHitCount();
+        }
+    }
+
+    /**
+     * Counts like {@link #hitCountDrillDown()}, seeded with the origin's query, filters and DocSet.
+     */
+    @Benchmark
+    public long hitCountDrillDownFromOrigin() throws IOException {
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(preparedOrigin)) {
+            return builder.useParams(drillDownParams).useOriginQuery().getHitCount();
+        }
+    }
+
+    @Benchmark
+    public long docSetUnscored() throws IOException {
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(origin)) {
+            return builder.useUnscoredSolrParams().getDocSet().size();
+        }
+    }
+
+    @Benchmark
+    public Object executeUnscoredWithFacets() throws IOException {
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(origin)) {
+            ResponseBuilder response = builder.useParams(facetParams).useFacetComponent().build();
+            SolrLocalResponseBuilder.execute(response);
+            return response.rsp.getValues().get("facet_counts");
+        }
+    }
+
+    /**
+     * Computes the facets of {@link #executeUnscoredWithFacets()} over the DocSet of the origin,
+     * without executing a query.
+     */
+    @Benchmark
+    public Object computeFacetCountsFromOrigin() throws IOException {
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(preparedOrigin)) {
+            return builder.useParams(facetParams).useOriginQuery().computeFacetCounts();
+        }
+    }
+
+    /**
+     * Computes the facets of {@link #executeUnscoredWithFacets()} with the JSON facet module.
+     */
+    @Benchmark
+    public Object executeUnscoredWithJsonFacets() throws IOException {
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(origin)) {
+            ResponseBuilder response = builder.useParams(jsonFacetParams).useJsonFacetModule().build();
+            SolrLocalResponseBuilder.execute(response);
+            return response.rsp.getValues().get("facets");
+        }
+    }
+
+    @Benchmark
+    public Object executeCachedUnscoredWithFacets() throws IOException {
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(origin)) {
+            return builder.useParams(facetParams).useFacetComponent().executeCached(CACHE_NAME).getFacetCounts();
+        }
+    }
+
+    /**
+     * Executes {@link #SERIES} unscored sub-requests with a new request each.
+     */
+    @Benchmark
+    public long executeUnscoredSeries() throws IOException {
+        long matches = 0;
+        for (int i = 0; i < SERIES; i++) {
+            try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(origin)) {
+                ResponseBuilder response = builder.useUnscoredSolrParams().build();
+                SolrLocalResponseBuilder.execute(response);
+                matches += response.getResults().docList.matches();
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Executes the sub-requests of {@link #executeUnscoredSeries()} with one reused request.
+     */
+    @Benchmark
+    public long executeUnscoredSeriesReused() throws IOException {
+        long matches = 0;
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(origin).reuseRequest()) {
+            for (int i = 0; i < SERIES; i++) {
+                ResponseBuilder response = builder.useUnscoredSolrParams().build();
+                SolrLocalResponseBuilder.execute(response);
+                matches += response.getResults().docList.matches();
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Executes a count, a query-only and a facet sub-request one after another.
+     */
+    @Benchmark
+    public int executeBatchSequential() throws IOException {
+        try (SolrLocalResponseBuilder count = new SolrLocalResponseBuilder(origin);
+             SolrLocalResponseBuilder query = new SolrLocalResponseBuilder(origin);
+             SolrLocalResponseBuilder facets = new SolrLocalResponseBuilder(origin)) {
+            List<ResponseBuilder> responses = batch(count, query, facets);
+            for (ResponseBuilder response : responses) {
+                SolrLocalResponseBuilder.execute(response);
+            }
+            return responses.size();
+        }
+    }
+
+    /**
+     * Executes the sub-requests of {@link #executeBatchSequential()} with a {@link SolrLocalRequestExecutor}.
+     * Needs at least 3 cores to show the speedup.
+     */
+    @Benchmark
+    public int executeBatchConcurrent() throws IOException {
+        try (SolrLocalResponseBuilder count = new SolrLocalResponseBuilder(origin);
+             SolrLocalResponseBuilder query = new SolrLocalResponseBuilder(origin);
+             SolrLocalResponseBuilder facets = new SolrLocalResponseBuilder(origin)) {
+            List<ResponseBuilder> completed = executor.executeAll(batch(count, query, facets), 10, TimeUnit.SECONDS);
+            return (int) completed.stream().filter(Objects::nonNull).count();
+        }
+    }
+
+    /**
+     * Executes the sub-requests of {@link #executeBatchSequential()} with
+     * {@link SolrLocalResponseBuilder#executeAsync(ResponseBuilder, java.util.concurrent.Executor)}.
+     * Needs at least 3 cores to show the speedup.
+     */
+    @Benchmark
+    public int executeBatchAsync() {
+        try (SolrLocalResponseBuilder count = new SolrLocalResponseBuilder(origin);
+             SolrLocalResponseBuilder query = new SolrLocalResponseBuilder(origin);
+             SolrLocalResponseBuilder facets = new SolrLocalResponseBuilder(origin)) {
+            CompletableFuture<?>[] futures = batch(count, query, facets).stream()
+                    .map(response -> SolrLocalResponseBuilder.executeAsync(response, asyncExecutor))
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(futures).join();
+            return futures.length;
+        }
+    }
+
+    private List<ResponseBuilder> batch(SolrLocalResponseBuilder count, SolrLocalResponseBuilder query,
+                                        SolrLocalResponseBuilder facets) {
+        return Arrays.asList(
+                count.useUnscoredSolrParams().build(),
+                query.useParams(SolrLocalResponseBuilder.computeUnscoredSolrQueryParams(origin.req.getParams())).build(),
+                facets.useParams(facetParams).useFacetComponent().build());
+    }
+}
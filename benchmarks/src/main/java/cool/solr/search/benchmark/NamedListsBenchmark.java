@@ -0,0 +1,168 @@
+package cool.solr.search.benchmark;
+
+import cool.solr.search.solr.util.ConvenientNamedList;
+import cool.solr.search.solr.util.NamedListPath;
+import cool.solr.search.solr.util.NamedListVisitor;
+import cool.solr.search.solr.util.NamedLists;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the {@link NamedLists} accessors and visitor, {@link NamedListPath} and {@link ConvenientNamedList} on a
+ * facet-response shaped named list.
+ * <p>
+ * Run with <code>-prof gc</code> to get allocation rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NamedListsBenchmark {
+
+    /**
+     * Number of facet values of each facet field.
+     */
+    @Param({"10", "1000"})
+    public int facetValues;
+
+    private NamedList<Object> response;
+    private ConvenientNamedList convenient;
+    private String lastValue;
+    private final NamedListPath<NamedList> brandPath =
+            NamedListPath.compile(NamedList.class, "facet_counts", "facet_fields", "brand");
+    private NamedListPath<Integer> lastValuePath;
+
+    @Setup
+    public void setUp() {
+        NamedList<Object> category = new NamedList<>();
+        NamedList<Object> brand = new NamedList<>();
+        for (int i = 0; i < facetValues; i++) {
+            category.add("category-" + i, i);
+            brand.add("brand-" + i, i);
+        }
+        lastValue = "brand-" + (facetValues - 1);
+        lastValuePath = NamedListPath.compile(Integer.class, "facet_counts", "facet_fields", "brand", lastValue);
+
+        NamedList<Object> facetFields = new SimpleOrderedMap<>();
+        facetFields.add("category", category);
+        facetFields.add("brand", brand);
+
+        NamedList<Object> facetCounts = new SimpleOrderedMap<>();
+        facetCounts.add("facet_queries", new SimpleOrderedMap<>());
+        facetCounts.add("facet_fields", facetFields);
+        facetCounts.add("facet_ranges", new SimpleOrderedMap<>());
+
+        NamedList<Object> header = new SimpleOrderedMap<>();
+        header.add("status", 0);
+        header.add("QTime", 3);
+
+        response = new SimpleOrderedMap<>();
+        response.add("responseHeader", header);
+        response.add("response", "docs");
+        response.add("facet_counts", facetCounts);
+
+        convenient = new ConvenientNamedList(response);
+    }
+
+    @Benchmark
+    public Object getByName() {
+        return NamedLists.get(response, NamedList.class, "facet_counts");
+    }
+
+    @Benchmark
+    public Object getByPath() {
+        return NamedLists.get(response, NamedList.class, "facet_counts", "facet_fields", "brand");
+    }
+
+    @Benchmark
+    public Object getLastEntryByPath() {
+        return NamedLists.get(response, Integer.class, "facet_counts", "facet_fields", "brand", lastValue);
+    }
+
+    @Benchmark
+    public Object compiledPath() {
+        return brandPath.get(response);
+    }
+
+    @Benchmark
+    public Object compiledPathLastEntry() {
+        return lastValuePath.get(response);
+    }
+
+    @Benchmark
+    public Object getByIndex() {
+        return NamedLists.get(response, NamedList.class, 2);
+    }
+
+    @Benchmark
+    public Object navigate() {
+        return NamedLists.navigate(response, "facet_counts", "facet_fields");
+    }
+
+    @Benchmark
+    public Set<String> keys() {
+        return NamedLists.keys(NamedLists.navigate(response, "facet_counts", "facet_fields", "brand"));
+    }
+
+    @Benchmark
+    public Object convenientGetNested() {
+        return convenient.getNested("facet_counts", "facet_fields", "brand").size();
+    }
+
+    @Benchmark
+    public long sumFacetCountsByKeys() {
+        long sum = 0;
+        NamedList<?> facetFields = NamedLists.navigate(response, "facet_counts", "facet_fields");
+        for (String field : NamedLists.keys(facetFields)) {
+            NamedList<?> counts = NamedLists.navigate(facetFields, field);
+            for (String value : NamedLists.keys(counts)) {
+                sum += NamedLists.get(counts, Integer.class, value);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long sumFacetCountsByWalk() {
+        FacetCountSum visitor = new FacetCountSum();
+        NamedLists.walk(response, visitor);
+        return visitor.sum;
+    }
+
+    /**
+     * Sums all facet field counts, skipping everything outside of <code>facet_counts</code>.
+     */
+    private static final class FacetCountSum implements NamedListVisitor {
+        private int depth;
+        private long sum;
+
+        @Override
+        public boolean enterList(String name, NamedList<?> namedList) {
+            boolean visit = depth == 0 || depth == 1 && "facet_counts".equals(name)
+                    || depth == 2 && "facet_fields".equals(name) || depth == 3;
+            if (visit) {
+                // skipped lists are not left
+                depth++;
+            }
+            return visit;
+        }
+
+        @Override
+        public void entry(String name, Object value) {
+            if (depth == 4) {
+                sum += (Integer) value;
+            }
+        }
+
+        @Override
+        public void leaveList(String name, NamedList<?> namedList) {
+            depth--;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package cool.solr.search.benchmark;
+
+import cool.solr.search.component.solr.util.SolrLocalResponseBuilder;
+import cool.solr.search.component.solr.util.SolrParamsRewriteRules;
+import cool.solr.search.solr.util.SolrParamsUtil;
+import org.apache.solr.common.params.MapSolrParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the param rewriting of {@link SolrLocalResponseBuilder} and {@link SolrParamsUtil}
+ * with a typical shop search request.
+ * <p>
+ * Run with <code>-prof gc</code> to get allocation rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SolrParamsBenchmark {
+
+    private SolrParams params;
+    private SolrParams mapParams;
+    private SolrParams reorderedParams;
+    private final SolrParamsRewriteRules.Memo memo = SolrLocalResponseBuilder.UNSCORED_RULES.memo(16);
+
+    @Setup
+    public void setUp() {
+        params = requestParams();
+
+        Map<String, String> map = new HashMap<>();
+        params.forEach(entry -> map.put(entry.getKey(), entry.getValue()[0]));
+        mapParams = new MapSolrParams(map);
+
+        // same params of another request, in another order
+        ModifiableSolrParams reordered = new ModifiableSolrParams();
+        List<String> names = new ArrayList<>();
+        params.getParameterNamesIterator().forEachRemaining(names::add);
+        Collections.reverse(names);
+        names.forEach(name -> reordered.set(name, params.getParams(name)));
+        reorderedParams = reordered;
+        memo.apply(params);
+    }
+
+    @Benchmark
+    public SolrParams computeUnscoredSolrParams() {
+        return SolrLocalResponseBuilder.computeUnscoredSolrParams(params);
+    }
+
+    @Benchmark
+    public SolrParams computeUnscoredSolrParamsMemo() {
+        return memo.apply(reorderedParams);
+    }
+
+    @Benchmark
+    public SolrParams computeUnscoredSolrQueryParams() {
+        return SolrLocalResponseBuilder.computeUnscoredSolrQueryParams(params);
+    }
+
+    @Benchmark
+    public SolrParams modifiable() {
+        return SolrParamsUtil.modifiable(mapParams);
+    }
+
+    /**
+     * Typical params of an incoming shop search request.
+     */
+    static ModifiableSolrParams requestParams() {
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set("q", "red leather boot");
+        params.set("defType", "edismax");
+        params.set("qf", "title^3 description");
+        params.set("pf", "title^10");
+        params.set("pf2", "title^5");
+        params.set("ps", "2");
+        params.set("mm", "100%");
+        params.set("bq", "brand:brand-1^2");
+        params.set("bf", "log(price)");
+        params.set("boost", "if(exists(price),1,0.5)");
+        params.set("boost.cache", "true");
+        params.set("fl", "id,title,price,score");
+        params.set("rows", "48");
+        params.set("start", "96");
+        params.set("sort", "score desc, id asc");
+        params.add("fq", "category:category-1");
+        params.add("fq", "price:[0 TO 500]");
+        params.set("facet", "true");
+        params.add("facet.field", "category");
+        params.add("facet.field", "brand");
+        params.set("facet.mincount", "1");
+        params.set("spellcheck", "true");
+        params.set("spellcheck.count", "5");
+        params.set("spellcheck.collate", "true");
+        params.set("echoParams", "all");
+        params.set("debug", "timing");
+        return params;
+    }
+}
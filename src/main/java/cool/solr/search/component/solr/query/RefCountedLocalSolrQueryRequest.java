@@ -0,0 +1,74 @@
+package cool.solr.search.component.solr.query;
+
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.RefCounted;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A {@link SearcherAwareLocalSolrQueryRequest} owning a reference to its searcher, which is
+ * released on {@link #close()}. The searcher stays open until then, even if the originating
+ * request completed or a new searcher has been registered meanwhile, so the request can be
+ * executed on other threads or kept longer than the originating request.
+ * <p>
+ * The request is reference counted itself: each user sharing it, e.g. a background execution,
+ * calls {@link #retain()} and closes it when done. The request is closed and the searcher released
+ * once the creator and all retaining users closed it; closing it more often is a no-op.
+ */
+public class RefCountedLocalSolrQueryRequest extends SearcherAwareLocalSolrQueryRequest {
+    /**
+     * Reference to the searcher, null if released.
+     */
+    private RefCounted<SolrIndexSearcher> holder;
+
+    /**
+     * Number of users, the creator included, 0 if closed.
+     */
+    private final AtomicInteger users = new AtomicInteger(1);
+
+    /**
+     * Create a request taking ownership of the given reference, e.g. of
+     * <code>SolrCore.getSearcher()</code>.
+     *
+     * @param holder Reference to the searcher, released on close.
+     * @param args Parameters.
+     */
+    public RefCountedLocalSolrQueryRequest(RefCounted<SolrIndexSearcher> holder, SolrParams args) {
+        super(checkNotNull(holder).get(), args);
+
+        this.holder = holder;
+    }
+
+    /**
+     * Register another user of this request, which has to close it when done.
+     *
+     * @return this.
+     * @throws IllegalStateException If the request has been closed already.
+     */
+    public RefCountedLocalSolrQueryRequest retain() {
+        int previous = users.getAndUpdate(count -> count > 0 ? count + 1 : count);
+        checkState(previous > 0, "Pre-condition violated: request must not be closed.");
+        return this;
+    }
+
+    /**
+     * Close this request for one user. The last one closes the request and releases the searcher.
+     */
+    @Override
+    public void close() {
+        if (users.getAndUpdate(count -> count > 0 ? count - 1 : count) != 1) {
+            return;
+        }
+
+        try {
+            super.close();
+        } finally {
+            holder.decref();
+            holder = null;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.apache.solr.request.SolrQueryRequestBase;
 import org.apache.solr.search.SolrIndexSearcher;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 /**
  * This request can be used inside a solr component to fire internal subrequest.
@@ -18,6 +19,11 @@ public class SearcherAwareLocalSolrQueryRequest extends SolrQueryRequestBase {
      */
     private SolrIndexSearcher searcher;
 
+    /**
+     * Original parameters of the current use, as the ones of the base class are final.
+     */
+    private SolrParams originalParams;
+
     /**
      * {@inheritDoc}
      * <p>
@@ -28,6 +34,7 @@ public class SearcherAwareLocalSolrQueryRequest extends SolrQueryRequestBase {
         super(checkNotNull(searcher).getCore(), args.toSolrParams());
 
         this.searcher = searcher;
+        this.originalParams = params;
     }
 
     /**
@@ -40,6 +47,7 @@ public class SearcherAwareLocalSolrQueryRequest extends SolrQueryRequestBase {
         super(checkNotNull(searcher).getCore(), args);
 
         this.searcher = searcher;
+        this.originalParams = params;
     }
 
     /**
@@ -50,6 +58,36 @@ public class SearcherAwareLocalSolrQueryRequest extends SolrQueryRequestBase {
         return searcher;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Returns the parameters of the current use, see {@link #reset(SolrParams)}.
+     */
+    @Override
+    public SolrParams getOriginalParams() {
+        return originalParams;
+    }
+
+    /**
+     * Reset this request for reuse with other parameters on the same searcher. Clears the
+     * context, the JSON body and the content streams left by the previous use and replaces the
+     * original parameters, so components see a fresh request. Responses built on the previous use must not be used anymore.
+     *
+     * @param params Parameters of the next use.
+     */
+    public void reset(SolrParams params) {
+        checkNotNull(params, "Pre-condition violated: params must not be null.");
+        checkState(searcher != null, "Pre-condition violated: request must not be closed.");
+
+        this.params = params;
+        this.originalParams = params;
+        if (context != null) {
+            context.clear();
+        }
+        json = null;
+        streams = null;
+    }
+
     @Override
     public void close() {
         super.close();
@@ -0,0 +1,88 @@
+package cool.solr.search.component.solr.util;
+
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.handler.component.SearchComponent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Cache key of a local sub-request: its search components and its params. Components are compared
+ * by identity, they live as long as the core. Params are compared independent of their order.
+ * The key holds a copy of the params, so a cached sub-request can be replayed on a new searcher.
+ */
+final class LocalRequestKey {
+    private final List<SearchComponent> components;
+    private final ModifiableSolrParams params;
+    private final int size;
+    private final int hashCode;
+
+    LocalRequestKey(List<SearchComponent> components, SolrParams params) {
+        this.components = new ArrayList<>(components);
+        this.params = new ModifiableSolrParams();
+
+        int size = 0;
+        int hash = 0;
+        for (Iterator<String> names = params.getParameterNamesIterator(); names.hasNext(); ) {
+            String name = names.next();
+            String[] values = params.getParams(name);
+            this.params.set(name, values != null ? values.clone() : null);
+            // order independent
+            hash += name.hashCode() ^ Arrays.hashCode(values);
+            size++;
+        }
+        for (SearchComponent component : components) {
+            hash = 31 * hash + System.identityHashCode(component);
+        }
+        this.size = size;
+        this.hashCode = hash;
+    }
+
+    List<SearchComponent> getComponents() {
+        return components;
+    }
+
+    /**
+     * A copy of the params.
+     */
+    ModifiableSolrParams getParams() {
+        return new ModifiableSolrParams(params);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof LocalRequestKey)) {
+            return false;
+        }
+
+        LocalRequestKey other = (LocalRequestKey) obj;
+        if (hashCode != other.hashCode || size != other.size || components.size() != other.components.size()) {
+            return false;
+        }
+        for (int i = 0; i < components.size(); i++) {
+            if (components.get(i) != other.components.get(i)) {
+                return false;
+            }
+        }
+        for (Iterator<String> names = params.getParameterNamesIterator(); names.hasNext(); ) {
+            String name = names.next();
+            if (!Arrays.equals(params.getParams(name), other.params.getParams(name))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "LocalRequestKey[" + params + "]";
+    }
+}
@@ -0,0 +1,166 @@
+package cool.solr.search.component.solr.util;
+
+import com.codahale.metrics.Timer;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.core.SolrInfoBean;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.handler.component.SearchComponent;
+import org.apache.solr.metrics.SolrMetricManager;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Metrics of local sub-requests, registered in the metric registry of the core, so they are
+ * reported like all other core metrics, e.g. to Prometheus. Enable them with
+ * {@link SolrLocalResponseBuilder#label(String)}. For a label <code>facets</code> the metrics are:
+ * <ul>
+ *     <li><code>QUERY.localRequest.facets.requestTimes</code>: timer of the whole execution.</li>
+ *     <li><code>QUERY.localRequest.facets.&lt;component&gt;.prepare</code> and
+ *     <code>.process</code>: timers per search component, named by its simple class name.</li>
+ * </ul>
+ * Cache statistics are not included, as the caches are shared by all requests of the core; see the
+ * cache metrics of the searcher.
+ * <p>
+ * There is one instance per core and label, see {@link #get(SolrCore, String)}. Instances are
+ * thread safe.
+ */
+public class LocalRequestMetrics {
+    /**
+     * Key of the metrics in the context of a sub-request, see {@link #of(ResponseBuilder)}.
+     */
+    public static final String CONTEXT_KEY = LocalRequestMetrics.class.getName();
+
+    /**
+     * Scope of the metrics below the QUERY category.
+     */
+    public static final String SCOPE = "localRequest";
+
+    /**
+     * Metrics per core and label.
+     */
+    private static final Map<SolrCore, ConcurrentMap<String, LocalRequestMetrics>> METRICS =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final SolrMetricManager metricManager;
+    private final String registry;
+    private final String prefix;
+
+    private final Timer requestTimes;
+
+    /**
+     * Prepare and process timer per search component.
+     */
+    private final ConcurrentMap<SearchComponent, Timer[]> componentTimes = new ConcurrentHashMap<>();
+
+    /**
+     * Create metrics for sub-requests with the given label.
+     *
+     * @param core Core whose registry is used.
+     * @param label Label of the sub-requests.
+     */
+    private LocalRequestMetrics(SolrCore core, String label) {
+        this.metricManager = core.getCoreContainer().getMetricManager();
+        this.registry = core.getCoreMetricManager().getRegistryName();
+        this.prefix = SolrMetricManager.mkName(label, SolrInfoBean.Category.QUERY.toString(), SCOPE);
+
+        this.requestTimes = metricManager.timer(null, registry, "requestTimes", prefix);
+    }
+
+    /**
+     * Returns the metrics for sub-requests with the given label, created on first use.
+     *
+     * @param core Core whose registry is used.
+     * @param label Label of the sub-requests.
+     */
+    public static LocalRequestMetrics get(SolrCore core, String label) {
+        checkNotNull(core, "Pre-condition violated: core must not be null.");
+        checkNotNull(label, "Pre-condition violated: label must not be null.");
+
+        ConcurrentMap<String, LocalRequestMetrics> metrics;
+        synchronized (METRICS) {
+            metrics = METRICS.get(core);
+            if (metrics == null) {
+                metrics = new ConcurrentHashMap<>();
+                METRICS.put(core, metrics);
+                core.addCloseHook(new CloseHook() {
+                    @Override
+                    public void preClose(SolrCore core) {
+                        METRICS.remove(core);
+                    }
+
+                    @Override
+                    public void postClose(SolrCore core) {
+                    }
+                });
+            }
+        }
+        return metrics.computeIfAbsent(label, l -> new LocalRequestMetrics(core, l));
+    }
+
+    /**
+     * Returns the metrics of a sub-request, or null if it has no label.
+     */
+    public static LocalRequestMetrics of(ResponseBuilder response) {
+        return (LocalRequestMetrics) response.req.getContext().get(CONTEXT_KEY);
+    }
+
+    /**
+     * Execute the sub-request like {@link SolrLocalResponseBuilder#execute(ResponseBuilder)},
+     * measuring it.
+     */
+    public void execute(ResponseBuilder response) throws IOException {
+        execute(response, () -> {
+        });
+    }
+
+    /**
+     * Execute the sub-request like {@link SolrLocalResponseBuilder#execute(ResponseBuilder)},
+     * measuring it and calling the checkpoint before each component phase.
+     */
+    void execute(ResponseBuilder response, Runnable checkpoint) throws IOException {
+        Timer.Context request = requestTimes.time();
+        try {
+            for (SearchComponent component : response.components) {
+                checkpoint.run();
+                Timer.Context prepare = timers(component)[0].time();
+                try {
+                    component.prepare(response);
+                } finally {
+                    prepare.stop();
+                }
+            }
+            for (SearchComponent component : response.components) {
+                checkpoint.run();
+                Timer.Context process = timers(component)[1].time();
+                try {
+                    component.process(response);
+                } finally {
+                    process.stop();
+                }
+            }
+        } finally {
+            request.stop();
+        }
+    }
+
+    //
+    // Helper
+    //
+
+    private Timer[] timers(SearchComponent component) {
+        return componentTimes.computeIfAbsent(component, c -> {
+            String name = c.getClass().getSimpleName();
+            return new Timer[]{
+                    metricManager.timer(null, registry, "prepare", prefix, name),
+                    metricManager.timer(null, registry, "process", prefix, name)};
+        });
+    }
+}
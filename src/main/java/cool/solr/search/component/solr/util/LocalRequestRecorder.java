@@ -0,0 +1,212 @@
+package cool.solr.search.component.solr.util;
+
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.handler.component.SearchComponent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Records how often sub-requests are built through {@link SolrLocalResponseBuilder}, per core.
+ * Recording only takes place for cores, for which a recorder has been registered, e.g. by a
+ * {@link LocalRequestWarmingListener}.
+ * <p>
+ * Recording is sampled: only every <code>sampleRate</code>-th sub-request on average is counted,
+ * so building a sub-request usually costs a random number only. The number of recorded
+ * sub-requests is bounded, new sub-requests are dropped while the recorder is full. Counts decay
+ * by half every {@link #DECAY_FACTOR} times <code>maxEntries</code> samples, so sub-requests that
+ * have been frequent in the past give way to the current ones.
+ * <p>
+ * Instances are thread safe.
+ */
+public class LocalRequestRecorder {
+    /**
+     * Registered recorders. Recorders are removed when their core is closed. Cores are weakly
+     * referenced in addition, in case a core is never closed.
+     */
+    private static final Map<SolrCore, LocalRequestRecorder> RECORDERS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Counts decay every <code>DECAY_FACTOR * maxEntries</code> samples.
+     */
+    static final int DECAY_FACTOR = 8;
+
+    /**
+     * Maximum number of recorded sub-requests.
+     */
+    private final int maxEntries;
+
+    /**
+     * One of this many sub-requests is recorded on average.
+     */
+    private final int sampleRate;
+
+    /**
+     * Number of samples between two decays.
+     */
+    private final long decayInterval;
+
+    /**
+     * Counts, guarded by this.
+     */
+    private final Map<LocalRequestKey, Counter> counts = new HashMap<>();
+
+    /**
+     * Samples since the last decay, guarded by this.
+     */
+    private long samples;
+
+    /**
+     * Create a recorder, which records all sub-requests.
+     *
+     * @param maxEntries Maximum number of recorded sub-requests.
+     */
+    public LocalRequestRecorder(int maxEntries) {
+        this(maxEntries, 1);
+    }
+
+    /**
+     * Create a recorder.
+     *
+     * @param maxEntries Maximum number of recorded sub-requests.
+     * @param sampleRate One of this many sub-requests is recorded on average, 1 to record all.
+     */
+    public LocalRequestRecorder(int maxEntries, int sampleRate) {
+        checkArgument(maxEntries > 0, "Pre-condition violated: maxEntries must be positive.");
+        checkArgument(sampleRate > 0, "Pre-condition violated: sampleRate must be positive.");
+
+        this.maxEntries = maxEntries;
+        this.sampleRate = sampleRate;
+        this.decayInterval = (long) DECAY_FACTOR * maxEntries;
+    }
+
+    /**
+     * Register a recorder for the given core, unless there already is one.
+     *
+     * @return The recorder of the core.
+     * @see #LocalRequestRecorder(int, int)
+     */
+    public static LocalRequestRecorder register(SolrCore core, int maxEntries, int sampleRate) {
+        checkNotNull(core, "Pre-condition violated: core must not be null.");
+
+        synchronized (RECORDERS) {
+            LocalRequestRecorder recorder = RECORDERS.get(core);
+            if (recorder == null) {
+                recorder = new LocalRequestRecorder(maxEntries, sampleRate);
+                RECORDERS.put(core, recorder);
+                core.addCloseHook(new CloseHook() {
+                    @Override
+                    public void preClose(SolrCore core) {
+                        RECORDERS.remove(core);
+                    }
+
+                    @Override
+                    public void postClose(SolrCore core) {
+                    }
+                });
+            }
+            return recorder;
+        }
+    }
+
+    /**
+     * Returns the recorder of the given core, or null if none has been registered.
+     */
+    public static LocalRequestRecorder get(SolrCore core) {
+        return RECORDERS.get(core);
+    }
+
+    /**
+     * Record a sub-request, if it is sampled.
+     */
+    public void record(List<SearchComponent> components, SolrParams params) {
+        if (isSampled()) {
+            add(new LocalRequestKey(components, params));
+        }
+    }
+
+    /**
+     * Returns the number of recorded sub-requests.
+     */
+    public synchronized int size() {
+        return counts.size();
+    }
+
+    /**
+     * Removes all recorded sub-requests.
+     */
+    public synchronized void clear() {
+        counts.clear();
+        samples = 0;
+    }
+
+    //
+    // Helper
+    //
+
+    /**
+     * Record a sub-request, if it is sampled.
+     */
+    void record(LocalRequestKey key) {
+        if (isSampled()) {
+            add(key);
+        }
+    }
+
+    /**
+     * Returns the most frequent sub-requests, most frequent first.
+     */
+    synchronized List<LocalRequestKey> top(int n) {
+        List<Map.Entry<LocalRequestKey, Counter>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().count, a.getValue().count));
+
+        List<LocalRequestKey> result = new ArrayList<>(Math.min(n, entries.size()));
+        for (int i = 0; i < n && i < entries.size(); i++) {
+            result.add(entries.get(i).getKey());
+        }
+        return result;
+    }
+
+    private boolean isSampled() {
+        return sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0;
+    }
+
+    private synchronized void add(LocalRequestKey key) {
+        if (++samples >= decayInterval) {
+            decay();
+            samples = 0;
+        }
+
+        Counter counter = counts.get(key);
+        if (counter == null) {
+            if (counts.size() >= maxEntries) {
+                // until the next decay
+                return;
+            }
+            counter = new Counter();
+            counts.put(key, counter);
+        }
+        counter.count++;
+    }
+
+    /**
+     * Halves all counts and removes the sub-requests whose count drops to 0.
+     */
+    private void decay() {
+        counts.values().removeIf(counter -> (counter.count >>= 1) == 0);
+    }
+
+    private static final class Counter {
+        private long count;
+    }
+}
@@ -0,0 +1,108 @@
+package cool.solr.search.component.solr.util;
+
+import cool.solr.search.component.solr.query.SearcherAwareLocalSolrQueryRequest;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.AbstractSolrEventListener;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Warms new searchers by replaying the most frequent sub-requests built through
+ * {@link SolrLocalResponseBuilder}, so the first sub-requests after a commit find warm caches.
+ * Registers a {@link LocalRequestRecorder} for its core. Configure it in <code>solrconfig.xml</code>:
+ * <pre>
+ * &lt;listener event="newSearcher" class="cool.solr.search.component.solr.util.LocalRequestWarmingListener"&gt;
+ *   &lt;int name="count"&gt;16&lt;/int&gt;
+ *   &lt;int name="maxEntries"&gt;1024&lt;/int&gt;
+ *   &lt;int name="sampleRate"&gt;8&lt;/int&gt;
+ * &lt;/listener&gt;
+ * </pre>
+ * <code>count</code> is the number of replayed sub-requests, <code>maxEntries</code> the number
+ * of recorded sub-requests and one of <code>sampleRate</code> sub-requests is recorded.
+ */
+public class LocalRequestWarmingListener extends AbstractSolrEventListener {
+    private static final Logger LOG = LoggerFactory.getLogger(LocalRequestWarmingListener.class);
+
+    public static final int DEFAULT_COUNT = 16;
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+    public static final int DEFAULT_SAMPLE_RATE = 8;
+
+    /**
+     * Number of replayed sub-requests.
+     */
+    private int count = DEFAULT_COUNT;
+
+    /**
+     * Recorder of the core.
+     */
+    private LocalRequestRecorder recorder;
+
+    public LocalRequestWarmingListener(SolrCore core) {
+        super(core);
+    }
+
+    @Override
+    public void init(NamedList args) {
+        super.init(args);
+
+        // accepts <int> and <str>
+        SolrParams params = args.toSolrParams();
+        count = params.getInt("count", DEFAULT_COUNT);
+        int maxEntries = params.getInt("maxEntries", DEFAULT_MAX_ENTRIES);
+        int sampleRate = params.getInt("sampleRate", DEFAULT_SAMPLE_RATE);
+        checkArgument(count >= 0, "Pre-condition violated: count must not be negative.");
+
+        recorder = LocalRequestRecorder.register(getCore(), maxEntries, sampleRate);
+    }
+
+    @Override
+    public void newSearcher(SolrIndexSearcher newSearcher, SolrIndexSearcher currentSearcher) {
+        List<LocalRequestKey> requests = recorder.top(count);
+
+        long start = System.nanoTime();
+        int warmed = 0;
+        for (LocalRequestKey key : requests) {
+            if (replay(newSearcher, key)) {
+                warmed++;
+            }
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Warmed {} of {} local sub-requests in {} ms", warmed, requests.size(),
+                    (System.nanoTime() - start) / 1000000);
+        }
+    }
+
+    //
+    // Helper
+    //
+
+    /**
+     * Executes a recorded sub-request against the new searcher. Failures are logged, as warming
+     * must not fail the searcher.
+     */
+    private static boolean replay(SolrIndexSearcher newSearcher, LocalRequestKey key) {
+        SearcherAwareLocalSolrQueryRequest request = new SearcherAwareLocalSolrQueryRequest(newSearcher, key.getParams());
+        ResponseBuilder response = SolrLocalResponseBuilder.createResponseBuilder(request, key.getComponents());
+        SolrRequestInfo.setRequestInfo(new SolrRequestInfo(request, response.rsp));
+        try {
+            SolrLocalResponseBuilder.execute(response);
+            return true;
+        } catch (Exception e) {
+            LOG.warn("Failed to warm local sub-request {}", key, e);
+            return false;
+        } finally {
+            SolrRequestInfo.clearRequestInfo();
+            request.close();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package cool.solr.search.component.solr.util;
+
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.response.ResultContext;
+import org.apache.solr.search.DocList;
+import org.apache.solr.search.DocListAndSet;
+import org.apache.solr.search.DocSet;
+
+/**
+ * Result of a local sub-request, detached from its request, so it can be cached for the lifetime
+ * of a searcher. Holds the matching documents and all response values except the response header
+ * and the result context, e.g. <code>facet_counts</code>.
+ * <p>
+ * Instances may be shared through a cache and must not be modified.
+ *
+ * @see SolrLocalResponseBuilder#executeCached(String)
+ */
+public class LocalResponse {
+    /**
+     * Name of the response header in the response values.
+     */
+    private static final String RESPONSE_HEADER = "responseHeader";
+
+    private final DocList docList;
+    private final DocSet docSet;
+    private final NamedList<Object> values;
+
+    private LocalResponse(DocList docList, DocSet docSet, NamedList<Object> values) {
+        this.docList = docList;
+        this.docSet = docSet;
+        this.values = values;
+    }
+
+    /**
+     * Create the result of an executed sub-request.
+     */
+    public static LocalResponse of(ResponseBuilder response) {
+        DocListAndSet results = response.getResults();
+
+        NamedList<?> responseValues = response.rsp.getValues();
+        NamedList<Object> values = new NamedList<>();
+        for (int i = 0; i < responseValues.size(); i++) {
+            String name = responseValues.getName(i);
+            Object value = responseValues.getVal(i);
+            // the result context references the request
+            if (!RESPONSE_HEADER.equals(name) && !(value instanceof ResultContext)) {
+                values.add(name, value);
+            }
+        }
+
+        return new LocalResponse(results != null ? results.docList : null, results != null ? results.docSet : null, values);
+    }
+
+    /**
+     * The matching documents of the requested page, or null if the query component did not run.
+     */
+    public DocList getDocList() {
+        return docList;
+    }
+
+    /**
+     * All matching documents, or null if they have not been requested, e.g. for faceting.
+     */
+    public DocSet getDocSet() {
+        return docSet;
+    }
+
+    /**
+     * The number of matching documents, or -1 if the query component did not run.
+     */
+    public long getNumFound() {
+        return docList != null ? docList.matches() : -1;
+    }
+
+    /**
+     * The response values, without response header and result context.
+     */
+    public NamedList<Object> getValues() {
+        return values;
+    }
+
+    /**
+     * The facet counts of the facet component, or null if it did not run.
+     */
+    @SuppressWarnings("unchecked")
+    public NamedList<Object> getFacetCounts() {
+        return (NamedList<Object>) values.get("facet_counts");
+    }
+
+    /**
+     * The facets of the JSON facet module, or null if it did not run.
+     */
+    @SuppressWarnings("unchecked")
+    public NamedList<Object> getJsonFacets() {
+        return (NamedList<Object>) values.get("facets");
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LocalResponse[numFound=%d, values=%d]", getNumFound(), values.size());
+    }
+}
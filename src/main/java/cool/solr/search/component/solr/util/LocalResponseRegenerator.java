@@ -0,0 +1,40 @@
+package cool.solr.search.component.solr.util;
+
+import cool.solr.search.component.solr.query.SearcherAwareLocalSolrQueryRequest;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.search.CacheRegenerator;
+import org.apache.solr.search.SolrCache;
+import org.apache.solr.search.SolrIndexSearcher;
+
+import java.io.IOException;
+
+/**
+ * Autowarms a local sub-request result cache by replaying the cached sub-requests against the new
+ * searcher. Configure it as the regenerator of the cache:
+ * <pre>
+ * &lt;cache name="localRequestCache" class="solr.CaffeineCache" size="512" autowarmCount="64"
+ *        regenerator="cool.solr.search.component.solr.util.LocalResponseRegenerator"/&gt;
+ * </pre>
+ *
+ * @see SolrLocalResponseBuilder#executeCached(String)
+ */
+public class LocalResponseRegenerator implements CacheRegenerator {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache, SolrCache oldCache,
+                                  Object oldKey, Object oldVal) throws IOException {
+        LocalRequestKey key = (LocalRequestKey) oldKey;
+
+        try (SearcherAwareLocalSolrQueryRequest request = new SearcherAwareLocalSolrQueryRequest(newSearcher, key.getParams())) {
+            ResponseBuilder response = SolrLocalResponseBuilder.createResponseBuilder(request, key.getComponents());
+            SolrLocalResponseBuilder.execute(response);
+            if (SolrLocalResponseBuilder.isCacheable(response)) {
+                newCache.put(key, LocalResponse.of(response));
+            }
+        }
+
+        // continue with the next item
+        return true;
+    }
+}
@@ -0,0 +1,106 @@
+package cool.solr.search.component.solr.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.solr.handler.component.SearchComponent;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Resolves search components of a search handler by class or by registered name in constant time.
+ * <p>
+ * Resolvers are cached per component list, which search handlers create once per configuration
+ * and pass to each of their requests as <code>ResponseBuilder.components</code>. The lists are
+ * weakly referenced and compared by identity, so a reloaded core gets new resolvers. Use this for
+ * such unmodified component lists only, the lookups are not updated if a list changes.
+ * <p>
+ * Instances are thread safe.
+ */
+public final class SearchComponentResolver {
+    /**
+     * Resolvers per component list.
+     */
+    private static final Cache<List<SearchComponent>, SearchComponentResolver> RESOLVERS = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+
+    /**
+     * Components by registered name.
+     */
+    private final Map<String, SearchComponent> byName;
+
+    /**
+     * First component per class and superclass. The list is not referenced, as it is the weak
+     * key of the cache.
+     */
+    private final Map<Class<?>, SearchComponent> byClass;
+
+    private SearchComponentResolver(List<SearchComponent> components) {
+        Map<String, SearchComponent> names = new HashMap<>();
+        Map<Class<?>, SearchComponent> classes = new HashMap<>();
+        for (SearchComponent component : components) {
+            if (component == null) {
+                continue;
+            }
+            if (component.getName() != null) {
+                names.putIfAbsent(component.getName(), component);
+            }
+            for (Class<?> type = component.getClass(); type != Object.class; type = type.getSuperclass()) {
+                classes.putIfAbsent(type, component);
+            }
+        }
+        this.byName = Collections.unmodifiableMap(names);
+        this.byClass = Collections.unmodifiableMap(classes);
+    }
+
+    /**
+     * Returns the resolver of the given component list, e.g. <code>ResponseBuilder.components</code>.
+     */
+    public static SearchComponentResolver of(List<SearchComponent> components) {
+        checkNotNull(components, "Pre-condition violated: components must not be null.");
+
+        SearchComponentResolver resolver = RESOLVERS.getIfPresent(components);
+        if (resolver != null) {
+            return resolver;
+        }
+
+        try {
+            return RESOLVERS.get(components, () -> new SearchComponentResolver(components));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns the first component of the given class or a subclass, or null if there is none.
+     */
+    public <T extends SearchComponent> T get(Class<T> type) {
+        checkNotNull(type, "Pre-condition violated: type must not be null.");
+
+        return type.cast(byClass.get(type));
+    }
+
+    /**
+     * Returns the component registered with the given name, e.g. <code>stats</code>, or null if
+     * there is none.
+     */
+    public SearchComponent get(String name) {
+        checkNotNull(name, "Pre-condition violated: name must not be null.");
+
+        return byName.get(name);
+    }
+
+    /**
+     * Returns the number of cached resolvers, after evicting those of collected lists.
+     */
+    static long size() {
+        RESOLVERS.cleanUp();
+        return RESOLVERS.size();
+    }
+}
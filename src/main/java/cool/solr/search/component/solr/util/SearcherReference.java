@@ -0,0 +1,105 @@
+package cool.solr.search.component.solr.util;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.RefCounted;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reference to a searcher, keeping it open until released, e.g. while a sub-request runs after
+ * its origin completed.
+ * <p>
+ * Registered and newest searchers, including one being warmed, are referenced through their
+ * reference count, like requests do. Other searchers, e.g. opened by a component itself, are not
+ * reference counted by the core, so only their raw index reader is kept open, see
+ * {@link #incref(SolrIndexSearcher)}.
+ * <p>
+ * Instances are thread safe.
+ */
+final class SearcherReference {
+    private final RefCounted<SolrIndexSearcher> holder;
+
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private SearcherReference(RefCounted<SolrIndexSearcher> holder) {
+        this.holder = holder;
+    }
+
+    /**
+     * Acquire a reference to the given searcher. Does not block, even while the first searcher of
+     * the core is warmed.
+     */
+    static SearcherReference acquire(SolrIndexSearcher searcher) {
+        return new SearcherReference(incref(searcher));
+    }
+
+    /**
+     * Returns a new reference to the given searcher, which must be released with
+     * {@link RefCounted#decref()} exactly once. Registered and newest searchers are referenced
+     * by the core, other searchers by their raw index reader only. Does not block.
+     * <p>
+     * Only the raw index reader of other searchers stays valid: if such a searcher is closed
+     * meanwhile, its caches are closed and its close hooks ran. Queries on it still read the
+     * index, but find no cached entries.
+     */
+    static RefCounted<SolrIndexSearcher> incref(SolrIndexSearcher searcher) {
+        checkNotNull(searcher, "Pre-condition violated: searcher must not be null.");
+
+        SolrCore core = searcher.getCore();
+        RefCounted<SolrIndexSearcher> holder = sameSearcher(core.getNewestSearcher(false), searcher);
+        if (holder == null) {
+            holder = sameSearcher(core.getRegisteredSearcher(), searcher);
+        }
+        if (holder != null) {
+            return holder;
+        }
+
+        // the reader closed with the searcher, not its wrapper; fails if closed already
+        DirectoryReader reader = searcher.getRawReader();
+        reader.incRef();
+        return new RefCounted<SolrIndexSearcher>(searcher) {
+            @Override
+            protected void close() {
+                try {
+                    reader.decRef();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }.incref();
+    }
+
+    /**
+     * Release the reference. Subsequent calls are no-ops.
+     */
+    void release() {
+        if (released.compareAndSet(false, true)) {
+            holder.decref();
+        }
+    }
+
+    //
+    // Helper
+    //
+
+    /**
+     * Returns the given reference if it references the searcher, releases it otherwise.
+     */
+    private static RefCounted<SolrIndexSearcher> sameSearcher(RefCounted<SolrIndexSearcher> holder, SolrIndexSearcher searcher) {
+        if (holder == null) {
+            return null;
+        }
+        if (holder.get() == searcher) {
+            return holder;
+        }
+
+        holder.decref();
+        return null;
+    }
+}
@@ -0,0 +1,277 @@
+package cool.solr.search.component.solr.util;
+
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.ExecutorUtil;
+import org.apache.solr.common.util.SolrNamedThreadFactory;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.request.SolrQueryRequestBase;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.search.SolrIndexSearcher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Executes a batch of local sub-requests, built by {@link SolrLocalResponseBuilder}, concurrently.
+ * Each sub-request runs the <code>prepare</code> and <code>process</code> phases of its components
+ * through {@link SolrLocalResponseBuilder#execute(ResponseBuilder)}, so labeled sub-requests are
+ * measured and <code>timeAllowed</code> limits their query timeout. The latency of a batch is the
+ * latency of its slowest sub-request instead of the sum of all.
+ * <p>
+ * All sub-requests of a batch must use the same searcher. Each sub-request runs with its own
+ * {@link SolrRequestInfo}, so close hooks registered during the sub-request run at its end, and
+ * those of the calling request only at the end of the calling request.
+ * <p>
+ * Sub-requests exceeding the timeout are cancelled. As Lucene must not be interrupted during IO,
+ * cancellation is cooperative: a cancelled sub-request stops before its next component phase, and
+ * the main query stops collecting through <code>timeAllowed</code>, which is set to the timeout
+ * unless the sub-request sets it itself. Each sub-request references the searcher until it
+ * stopped, so the searcher stays open even if the calling request completes meanwhile.
+ * <p>
+ * Instances are thread safe.
+ */
+public class SolrLocalRequestExecutor implements Closeable {
+    /**
+     * Executor to run the sub-requests on.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Whether the executor has been created by this instance and has to be shut down on close.
+     */
+    private final boolean ownsExecutor;
+
+    /**
+     * Create an executor with its own bounded pool of the given size. The pool is shut down on
+     * {@link #close()}, so create one instance per core or plugin, not per request.
+     *
+     * @param threads Maximum number of concurrently executed sub-requests.
+     */
+    public SolrLocalRequestExecutor(int threads) {
+        checkArgument(threads > 0, "Pre-condition violated: threads must be positive.");
+
+        // not MDC aware, as that would run the close hooks of the calling request on the pool threads
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new SolrNamedThreadFactory("solrLocalRequestExecutor"));
+        this.ownsExecutor = true;
+    }
+
+    /**
+     * Create an executor using the given executor service. The executor service is not shut down
+     * on {@link #close()}. Do not use the MDC aware executors of Solr, e.g. of
+     * <code>ExecutorUtil.newMDCAwareFixedThreadPool</code>: they pass the request info of the
+     * calling thread to the pool threads and run its close hooks there.
+     *
+     * @param executor Executor service to run the sub-requests on. Should be bounded.
+     */
+    public SolrLocalRequestExecutor(ExecutorService executor) {
+        this.executor = checkNotNull(executor);
+        this.ownsExecutor = false;
+    }
+
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            ExecutorUtil.shutdownAndAwaitTermination(executor);
+        }
+    }
+
+    /**
+     * Execute the given sub-requests concurrently and wait for them to complete. The last
+     * sub-request runs on the calling thread. Like all sub-requests it stops before its next
+     * component phase once the timeout elapsed, so it may be <code>null</code> in the result too.
+     *
+     * @param responses Built sub-requests, all using the same searcher.
+     * @param timeout   Maximum time to wait for each sub-request, measured from the start of the batch.
+     * @param unit      Unit of the timeout.
+     * @return The given sub-requests in the given order, with <code>null</code> in place of each
+     * sub-request that did not complete in time. A sub-request that did not complete in time may
+     * still be running until its next cancellation point and must not be used anymore.
+     * @throws IOException If a sub-request failed. All other sub-requests are cancelled.
+     */
+    public List<ResponseBuilder> executeAll(List<ResponseBuilder> responses, long timeout, TimeUnit unit) throws IOException {
+        checkNotNull(responses, "Pre-condition violated: responses must not be null.");
+        checkArgument(timeout > 0, "Pre-condition violated: timeout must be positive.");
+        checkNotNull(unit, "Pre-condition violated: unit must not be null.");
+        if (responses.isEmpty()) {
+            return new ArrayList<>();
+        }
+        checkSameSearcher(responses);
+
+        long timeoutMillis = Math.max(1, unit.toMillis(timeout));
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        SubRequest[] tasks = new SubRequest[responses.size()];
+        try {
+            for (int i = 0; i < tasks.length; i++) {
+                ResponseBuilder response = responses.get(i);
+                limitTimeAllowed(response, timeoutMillis);
+                tasks[i] = new SubRequest(response, deadline);
+            }
+
+            for (int i = 0; i < tasks.length - 1; i++) {
+                executor.execute(tasks[i]);
+            }
+            // the calling thread would only wait otherwise
+            tasks[tasks.length - 1].run();
+
+            ResponseBuilder[] result = new ResponseBuilder[tasks.length];
+            for (int i = 0; i < tasks.length; i++) {
+                result[i] = await(tasks[i], deadline);
+            }
+            return Arrays.asList(result);
+        } finally {
+            // no-op for completed sub-requests, releases the searcher of those not started
+            for (SubRequest task : tasks) {
+                if (task != null) {
+                    task.cancel(false);
+                }
+            }
+        }
+    }
+
+    //
+    // Helper
+    //
+
+    /**
+     * Waits for the sub-request until the deadline.
+     *
+     * @return The response builder, or null if the sub-request did not complete in time.
+     */
+    private static ResponseBuilder await(SubRequest task, long deadline) throws IOException {
+        try {
+            return task.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | CancellationException e) {
+            task.cancel(false);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for local sub-requests.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CancellationException) {
+                // stopped itself at the deadline
+                return null;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static void checkSameSearcher(List<ResponseBuilder> responses) {
+        SolrIndexSearcher searcher = responses.get(0).req.getSearcher();
+        for (ResponseBuilder response : responses) {
+            checkArgument(response.req.getSearcher() == searcher,
+                    "Pre-condition violated: all sub-requests must use the same searcher.");
+        }
+    }
+
+    /**
+     * Sets <code>timeAllowed</code> of the sub-request to the timeout, unless it is already set.
+     */
+    private static void limitTimeAllowed(ResponseBuilder response, long timeoutMillis) {
+        if (response.req.getParams().get(CommonParams.TIME_ALLOWED) == null
+                && response.req instanceof SolrQueryRequestBase) {
+            ModifiableSolrParams params = new ModifiableSolrParams(response.req.getParams());
+            params.set(CommonParams.TIME_ALLOWED, Long.toString(timeoutMillis));
+            ((SolrQueryRequestBase) response.req).setParams(params);
+        }
+    }
+
+    /**
+     * Future of a sub-request, signalling cancellation to the execution.
+     */
+    private static final class SubRequest extends FutureTask<ResponseBuilder> {
+        private final Execution execution;
+
+        SubRequest(ResponseBuilder response, long deadline) {
+            this(new Execution(response, deadline));
+        }
+
+        private SubRequest(Execution execution) {
+            super(execution);
+            this.execution = execution;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            execution.cancelled = true;
+            boolean result = super.cancel(mayInterruptIfRunning);
+            execution.releaseIfNotStarted();
+            return result;
+        }
+    }
+
+    /**
+     * Sub-request execution, checking for cancellation and the deadline before each component
+     * phase, also when run on the calling thread. References
+     * the searcher from creation until the execution stopped or has been cancelled before start.
+     */
+    private static final class Execution implements Callable<ResponseBuilder> {
+        private final ResponseBuilder response;
+        private final SearcherReference searcher;
+        private final long deadline;
+        private final AtomicBoolean started = new AtomicBoolean();
+        private volatile boolean cancelled;
+
+        Execution(ResponseBuilder response, long deadline) {
+            this.response = response;
+            this.deadline = deadline;
+            this.searcher = SearcherReference.acquire(response.req.getSearcher());
+        }
+
+        void releaseIfNotStarted() {
+            if (started.compareAndSet(false, true)) {
+                searcher.release();
+            }
+        }
+
+        @Override
+        public ResponseBuilder call() throws IOException {
+            if (!started.compareAndSet(false, true)) {
+                throw new CancellationException();
+            }
+
+            SolrRequestInfo.setRequestInfo(new SolrRequestInfo(response.req, response.rsp));
+            try {
+                SolrLocalResponseBuilder.execute(response, this::checkNotCancelled);
+                return response;
+            } finally {
+                try {
+                    SolrRequestInfo.clearRequestInfo();
+                } finally {
+                    searcher.release();
+                }
+            }
+        }
+
+        private void checkNotCancelled() {
+            if (cancelled || System.nanoTime() - deadline > 0) {
+                throw new CancellationException();
+            }
+        }
+    }
+}
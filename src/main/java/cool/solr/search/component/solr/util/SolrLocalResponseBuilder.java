@@ -1,40 +1,187 @@
 package cool.solr.search.component.solr.util;
 
-import com.google.common.collect.Sets;
+import cool.solr.search.component.solr.query.RefCountedLocalSolrQueryRequest;
 import cool.solr.search.component.solr.query.SearcherAwareLocalSolrQueryRequest;
+import org.apache.lucene.index.ExitableDirectoryReader;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TimeLimitingCollector;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.*;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.common.util.Utils;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.handler.component.FacetComponent;
 import org.apache.solr.handler.component.QueryComponent;
 import org.apache.solr.handler.component.ResponseBuilder;
 import org.apache.solr.handler.component.SearchComponent;
+import org.apache.solr.request.SimpleFacets;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
 import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.search.DocListAndSet;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.DocSetCollector;
+import org.apache.solr.search.EarlyTerminatingCollector;
+import org.apache.solr.search.EarlyTerminatingCollectorException;
+import org.apache.solr.search.QParser;
+import org.apache.solr.search.QParserPlugin;
+import org.apache.solr.search.QueryParsing;
+import org.apache.solr.search.SolrCache;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.SolrQueryTimeoutImpl;
+import org.apache.solr.search.SyntaxError;
+import org.apache.solr.search.facet.FacetModule;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 /**
  * Builder for a Solr response using a local Solr request.
  * <p>
+ * If only the matching documents, their number or their facet counts are needed, use
+ * {@link #getDocSet()}, {@link #getHitCount()} or {@link #computeFacetCounts()} instead of
+ * {@link #build()}. They parse q and fq and ask the searcher directly, without going through the
+ * search components.
+ * <p>
+ * To run many sub-requests one after another with little allocation, see {@link #reuseRequest()}.
+ * To bound the cost of a sub-request, see {@link #timeAllowed(long)} and {@link #maxHits(int)}.
+ * <p>
  * Always use inside try with resources!
  */
 public class SolrLocalResponseBuilder implements Closeable {
+    /**
+     * Params affecting the documents matched by the main query of the standard, dismax and
+     * edismax query parsers, see {@link #useOriginQuery()}.
+     */
+    private static final String[] QUERY_PARAMS = {
+            CommonParams.Q, QueryParsing.DEFTYPE, QueryParsing.OP, QueryParsing.SPLIT_ON_WHITESPACE, CommonParams.DF,
+            DisMaxParams.QF, DisMaxParams.MM, DisMaxParams.MM_AUTORELAX, DisMaxParams.ALTQ,
+            "uf", "lowercaseOperators", "stopwords"
+    };
+
+    /**
+     * Key of the tags of parsed local params in the request context, see <code>QParser</code>.
+     */
+    private static final String TAGS = "tags";
+
+    /**
+     * Reference of a param in local params, e.g. <code>$qq</code> in <code>{!edismax v=$qq}</code>.
+     */
+    private static final Pattern PARAM_REFERENCE = Pattern.compile("\\$([\\w.]+)");
+
+    /**
+     * Rules of {@link #computeUnscoredSolrParams(SolrParams)}.
+     */
+    public static final SolrParamsRewriteRules UNSCORED_RULES = SolrParamsRewriteRules.builder()
+            .remove(CommonParams.START)
+            .set(CommonParams.FL, "id")
+            .set(CommonParams.ROWS, "0")
+            .remove(CommonParams.DEBUG)
+            .remove(CommonParams.HEADER_ECHO_PARAMS)
+            .remove(GroupParams.GROUP)
+
+            // remove boosting
+            .remove(DisMaxParams.BF)
+            .remove(DisMaxParams.BQ)
+            .remove("boost")
+            .remove("rq")
+            .remove("rrq")
+
+            // remove phrase boosting
+            .remove(DisMaxParams.PF)
+            .remove(DisMaxParams.PF2)
+            .remove(DisMaxParams.PF3)
+            .remove(DisMaxParams.PS)
+            .remove(DisMaxParams.PS2)
+            .remove(DisMaxParams.PS3)
+
+            // disable elevation
+            .set("enableElevation", "false")
+            .set("forceElevation", "false")
+
+            // disable spellcheck & facetting
+            .set("spellcheck", "false")
+            .set(FacetParams.FACET, "false")
+            .set("collapse", "false")
+            .set("collapse.enable", "false")
+            .set("expand", "false")
+            .set("expand.append", "false")
+            .set("ranking.barkeeper", "false")
+            .set("facet.cache.static", "false")
+            .set("boost.cache", "false")
+            .set("bq.cache", "false")
+
+            // remove sorting
+            .set(CommonParams.SORT, "_docid_ asc")
+
+            // remove waste, this removes boost.cache=false too
+            .removePrefix("spellcheck.")
+            .removePrefix("bmax.")
+            .removePrefix("boost.")
+            .build();
+
+    /**
+     * Checkpoint of {@link #execute(ResponseBuilder)}, which cannot be cancelled.
+     */
+    private static final Runnable NO_CHECKPOINT = () -> {
+    };
+
+    /**
+     * Param and JSON key of JSON facets.
+     */
+    private static final String JSON_FACET = "json.facet";
+    private static final String JSON_FACET_KEY = "facet";
+
+    /**
+     * Enables faceting, see {@link #computeFacetCounts(DocSet)}.
+     */
+    private static final SolrParams FACET_ENABLED = new MapSolrParams(Collections.singletonMap(FacetParams.FACET, "true"));
+
     /**
      * Originating request.
      */
     private final ResponseBuilder origin;
 
+    /**
+     * Resolver of the components of the origin.
+     */
+    private final SearchComponentResolver resolver;
+
     /**
      * Search components to use.
      */
     private final List<SearchComponent> components = new ArrayList<>();
 
+    /**
+     * Whether the components contain a facet module.
+     */
+    private boolean facetModule;
+
     /**
      * Parameters to use.
      */
@@ -45,23 +192,77 @@ public class SolrLocalResponseBuilder implements Closeable {
      */
     private SearcherAwareLocalSolrQueryRequest request;
 
+    /**
+     * The request of the DocSet mode, see {@link #getDocSet()}.
+     */
+    private SearcherAwareLocalSolrQueryRequest queryRequest;
+
+    /**
+     * Parsed main query and filters of the DocSet mode, null if not parsed yet.
+     */
+    private Query query;
+    private List<Query> filters;
+
+    /**
+     * Whether to seed the DocSet mode from the origin, see {@link #useOriginQuery()}.
+     */
+    private boolean useOriginQuery;
+
+    /**
+     * Matching documents of the origin and the filters not in the origin, null if not seeded.
+     */
+    private DocSet originDocSet;
+    private List<Query> extraFilters;
+
+    /**
+     * Whether to reuse the requests, see {@link #reuseRequest()}.
+     */
+    private boolean reuseRequest;
+
+    /**
+     * Whether the requests reference their searcher, see {@link #holdSearcher()}.
+     */
+    private boolean holdSearcher;
+
+    /**
+     * Metrics of the sub-requests, null if not labeled, see {@link #label(String)}.
+     */
+    private LocalRequestMetrics metrics;
+
+    /**
+     * Budget of the sub-requests, see {@link #timeAllowed(long)} and {@link #maxHits(int)}.
+     */
+    private long timeAllowed;
+    private int maxHits = Integer.MAX_VALUE;
+
+    /**
+     * Whether the last {@link #getDocSet()} or {@link #getHitCount()} ran out of budget.
+     */
+    private boolean partialResults;
+
     /**
      * Create local request builder from originating request.
-     * Uses query component only.
+     * Uses query component only, the one of the origin or else the one registered in the core.
      *
      * @param origin Originating request.
      */
     public SolrLocalResponseBuilder(ResponseBuilder origin) {
         this.origin = checkNotNull(origin);
-        components.add(extractQueryComponent(origin.components));
+        this.resolver = SearchComponentResolver.of(origin.components != null ? origin.components : Collections.emptyList());
+        addComponent(resolve(QueryComponent.class, QueryComponent.COMPONENT_NAME));
     }
 
     @Override
     public void close() {
-        if (request != null) {
+        // held requests are owned by the caller
+        if (request != null && !holdSearcher) {
             request.close();
         }
+        if (queryRequest != null) {
+            queryRequest.close();
+        }
         components.clear();
+        facetModule = false;
     }
 
     /**
@@ -72,8 +273,19 @@ public class SolrLocalResponseBuilder implements Closeable {
      * @return this for method chaining.
      */
     public SolrLocalResponseBuilder useUnscoredSolrParams() {
-        params = computeUnscoredSolrParams(origin.req.getParams());
-        return this;
+        return useParams(computeUnscoredSolrParams(origin.req.getParams()));
+    }
+
+    /**
+     * This takes the original incoming solr params and rewrites them with the
+     * given rules, e.g. configured by {@link #unscoredRules(NamedList)}.
+     *
+     * @return this for method chaining.
+     */
+    public SolrLocalResponseBuilder useUnscoredSolrParams(SolrParamsRewriteRules rules) {
+        checkNotNull(rules, "Pre-condition violated: rules must not be null.");
+
+        return useParams(rules.apply(origin.req.getParams()));
     }
 
     /**
@@ -83,16 +295,190 @@ public class SolrLocalResponseBuilder implements Closeable {
      */
     public SolrLocalResponseBuilder useParams(SolrParams params) {
         this.params = params;
+        this.query = null;
+        this.filters = null;
         return this;
     }
 
     /**
-     * Use facet component too.
+     * Seed {@link #getDocSet()} and {@link #getHitCount()} with the matching documents of the
+     * origin, as computed by its query component, e.g. for faceting. If the params have the same
+     * query as the origin and contain all of its fq, the parsed query and filters of the origin
+     * are reused and only the additional fq are parsed and intersected with its documents.
+     * <p>
+     * The query is the same, if all params affecting the matching documents are equal, e.g. q,
+     * defType, qf, mm, q.op and params referenced by local params. Params only affecting the
+     * score, e.g. pf, bf, bq and boost, may differ, so this applies to params derived by
+     * {@link #useUnscoredSolrParams()} and adding fq. The origin is not used if a component
+     * modified its query or filters, e.g. by elevation, or if its results are partial; otherwise
+     * the params are parsed as usual.
+     *
+     * @return this for method chaining.
+     */
+    public SolrLocalResponseBuilder useOriginQuery() {
+        this.useOriginQuery = true;
+        this.query = null;
+        this.filters = null;
+        return this;
+    }
+
+    /**
+     * Use facet component too, the one of the origin or else the one registered in the core.
      *
      * @return this for method chaining.
      */
     public SolrLocalResponseBuilder useFacetComponent() {
-        components.add(extractFacetComponent(origin.components));
+        addComponent(resolve(FacetComponent.class, FacetComponent.COMPONENT_NAME));
+        return this;
+    }
+
+    /**
+     * Use the search component registered with the given name too, e.g. <code>stats</code>.
+     * The component is looked up in the components of the origin first, then in the core.
+     * Components run in the order they have been added.
+     *
+     * @return this for method chaining.
+     * @throws SolrException If there is no such component.
+     */
+    public SolrLocalResponseBuilder useComponent(String name) {
+        checkNotNull(name, "Pre-condition violated: name must not be null.");
+
+        SearchComponent component = resolver.get(name);
+        if (component == null) {
+            component = origin.req.getCore().getSearchComponent(name);
+        }
+        if (component == null) {
+            throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+                    "Missing search component " + name + " in the origin and the core");
+        }
+
+        addComponent(component);
+        return this;
+    }
+
+    /**
+     * Use the first search component of the origin with the given class or a subclass too.
+     * Components run in the order they have been added.
+     *
+     * @return this for method chaining.
+     * @throws SolrException If the origin has no such component.
+     */
+    public SolrLocalResponseBuilder useComponent(Class<? extends SearchComponent> type) {
+        checkNotNull(type, "Pre-condition violated: type must not be null.");
+
+        SearchComponent component = resolver.get(type);
+        if (component == null) {
+            throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+                    "Missing search component " + type.getName() + " in the origin");
+        }
+
+        addComponent(component);
+        return this;
+    }
+
+    /**
+     * Use the JSON facet module too. Its facets are read from the <code>json.facet</code> param,
+     * which the unscored params keep unless the rules remove it. If the origin has JSON facets
+     * without that param, e.g. of a JSON request body, these are used. The result is in <code>facets</code> of the response, see
+     * {@link LocalResponse#getJsonFacets()}.
+     * <p>
+     * If the origin has no facet module, e.g. due to a custom component list, the one registered
+     * in the core is used.
+     *
+     * @return this for method chaining.
+     */
+    public SolrLocalResponseBuilder useJsonFacetModule() {
+        addComponent(resolve(FacetModule.class, FacetModule.COMPONENT_NAME));
+        return this;
+    }
+
+    /**
+     * Reuse one request for all sub-requests of this builder. Each {@link #build()} resets the
+     * request to the current params instead of allocating a new one and skips the log
+     * decoration of the response, as sub-requests are not logged anyway. Use this to run many
+     * sub-requests one after another, e.g. in a loop calling {@link #useParams(SolrParams)} and
+     * {@link #build()}.
+     * <p>
+     * A response builder is only valid until the next {@link #build()}, so do not use this with
+     * {@link SolrLocalRequestExecutor}.
+     *
+     * @return this for method chaining.
+     */
+    public SolrLocalResponseBuilder reuseRequest() {
+        this.reuseRequest = true;
+        return this;
+    }
+
+    /**
+     * Let built requests hold a reference to the searcher until they are closed, see
+     * {@link RefCountedLocalSolrQueryRequest}. The searcher then stays open even after the
+     * originating request completed, so sub-requests can run on background threads or be kept
+     * longer than the originating request. For a searcher the core neither registered nor is
+     * warming, only its index reader stays open; its caches are closed with it.
+     * <p>
+     * The caller owns the built requests: closing this builder does not close them, close
+     * <code>response.req</code> after the execution instead, e.g.
+     * <code>executeAsync(response, executor).whenComplete((r, e) -&gt; response.req.close())</code>.
+     * This is safe on cancellation too, as {@link #executeAsync(ResponseBuilder, Executor)}
+     * retains the request until its execution stopped.
+     * Cannot be combined with {@link #reuseRequest()}.
+     *
+     * @return this for method chaining.
+     */
+    public SolrLocalResponseBuilder holdSearcher() {
+        this.holdSearcher = true;
+        return this;
+    }
+
+    /**
+     * Label the sub-requests of this builder to measure their execution by
+     * {@link #execute(ResponseBuilder)} with {@link LocalRequestMetrics}. Builders with the same
+     * label share their metrics.
+     *
+     * @return this for method chaining.
+     */
+    public SolrLocalResponseBuilder label(String label) {
+        checkNotNull(label, "Pre-condition violated: label must not be null.");
+
+        this.metrics = LocalRequestMetrics.get(origin.req.getCore(), label);
+        return this;
+    }
+
+    /**
+     * Limit the time of the sub-requests. Built sub-requests get the <code>timeAllowed</code>
+     * param, or keep a lower one of the params. {@link #execute(ResponseBuilder)} additionally
+     * limits the query timeout of Solr for the executing thread, e.g. for term expansion. For
+     * {@link #getDocSet()} and {@link #getHitCount()} see {@link #maxHits(int)}.
+     * <p>
+     * Sub-requests running out of time return the results found so far and report partial
+     * results, see {@link #isPartialResults(ResponseBuilder)} and {@link #isPartialResults()}.
+     *
+     * @param timeAllowed Time allowed in milliseconds, 0 for no limit.
+     * @return this for method chaining.
+     */
+    public SolrLocalResponseBuilder timeAllowed(long timeAllowed) {
+        checkArgument(timeAllowed >= 0, "Pre-condition violated: timeAllowed must not be negative.");
+
+        this.timeAllowed = timeAllowed;
+        return this;
+    }
+
+    /**
+     * Limit the number of hits the sub-requests need to find. {@link #getDocSet()} and
+     * {@link #getHitCount()} stop collecting at it and report partial results.
+     * <p>
+     * Built sub-requests sorted by score only get the <code>minExactCount</code> param, so Solr
+     * may skip non-competitive hits beyond it and count them approximately. All other sorts, like
+     * the <code>_docid_</code> sort of {@link #useUnscoredSolrParams()}, collect all hits, as Solr
+     * does not terminate them early.
+     *
+     * @param maxHits Maximum number of hits, at least 1.
+     * @return this for method chaining.
+     */
+    public SolrLocalResponseBuilder maxHits(int maxHits) {
+        checkArgument(maxHits > 0, "Pre-condition violated: maxHits must be positive.");
+
+        this.maxHits = maxHits;
         return this;
     }
 
@@ -102,11 +488,476 @@ public class SolrLocalResponseBuilder implements Closeable {
     public ResponseBuilder build() {
         checkNotNull(params, "Pre-condition violated: params must not be null.");
         checkArgument(!components.isEmpty(), "Pre-condition violated: expression !components.isEmpty() must be true.");
+        checkState(!(reuseRequest && holdSearcher), "Pre-condition violated: reuseRequest and holdSearcher must not be combined.");
+
+        SolrParams requestParams = requestParams();
+        if (reuseRequest && request != null) {
+            request.reset(requestParams);
+        } else {
+            request = createRequest(requestParams);
+        }
+        record(requestParams);
+        if (metrics != null) {
+            request.getContext().put(LocalRequestMetrics.CONTEXT_KEY, metrics);
+        }
+
+        // held requests may outlive this builder, which clears its components on close
+        return createResponseBuilder(request, holdSearcher ? new ArrayList<>(components) : components, !reuseRequest, facetModule);
+    }
+
+    /**
+     * Execute the request through the given <code>SolrCache</code> of the searcher. The result
+     * is cached by components and params for the lifetime of the searcher. Results with partial
+     * results, e.g. due to <code>timeAllowed</code>, are not cached.
+     * <p>
+     * Configure the cache as a user cache in <code>solrconfig.xml</code>. Its statistics, e.g. the
+     * hit ratio, are reported by the metrics of the searcher like for all other caches. Use
+     * {@link LocalResponseRegenerator} as its regenerator to autowarm it. If the cache does not
+     * exist, the request is executed uncached.
+     *
+     * @param cacheName Name of the user cache.
+     * @return The result, may be shared and must not be modified.
+     */
+    @SuppressWarnings("unchecked")
+    public LocalResponse executeCached(String cacheName) throws IOException {
+        checkNotNull(cacheName, "Pre-condition violated: cacheName must not be null.");
+        checkNotNull(params, "Pre-condition violated: params must not be null.");
+        checkArgument(!components.isEmpty(), "Pre-condition violated: expression !components.isEmpty() must be true.");
+
+        SolrCache<LocalRequestKey, LocalResponse> cache = origin.req.getSearcher().getCache(cacheName);
+        if (cache == null) {
+            return executeUncached();
+        }
+
+        LocalRequestKey key = new LocalRequestKey(components, requestParams());
+        LocalResponse result = cache.get(key);
+        if (result != null) {
+            // build() records otherwise
+            record(key);
+        } else {
+            ResponseBuilder response = build();
+            try {
+                execute(response);
+                result = LocalResponse.of(response);
+                if (isCacheable(response)) {
+                    cache.put(key, result);
+                }
+            } finally {
+                if (holdSearcher) {
+                    response.req.close();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Execute request by calling the search components directly. Labeled requests are measured,
+     * see {@link #label(String)}. With a <code>timeAllowed</code> param, the query timeout of
+     * Solr for the executing thread is limited to it meanwhile.
+     */
+    public static void execute(ResponseBuilder response) throws IOException {
+        execute(response, NO_CHECKPOINT);
+    }
+
+    /**
+     * Execute the request on the given executor, e.g. to overlap it with other work of the
+     * calling component, like {@link #execute(ResponseBuilder)}. The sub-request runs with its
+     * own {@link SolrRequestInfo}, so close hooks registered during the sub-request run at its
+     * end, and those of the calling request only at the end of the calling request.
+     * <p>
+     * The searcher of the request is referenced until the execution stops, so it stays open even
+     * if the origin completes meanwhile. Cancelling the future stops the execution before its
+     * next component phase, as Lucene must not be interrupted during IO; use
+     * {@link #timeAllowed(long)} to bound the main query. A cancelled future completes at once,
+     * while the execution may still use the request until then. So close requests of
+     * {@link #holdSearcher()}, which are retained until the execution stopped, on completion of the
+     * future, but other requests only after their origin completed.
+     *
+     * @param response Built sub-request.
+     * @param executor Executor to run the sub-request on. Should be bounded. Do not use the MDC
+     *                 aware executors of Solr, see {@link SolrLocalRequestExecutor}.
+     * @return Future of the given response builder, completed after execution.
+     */
+    public static CompletableFuture<ResponseBuilder> executeAsync(ResponseBuilder response, Executor executor) {
+        checkNotNull(response, "Pre-condition violated: response must not be null.");
+        checkNotNull(executor, "Pre-condition violated: executor must not be null.");
+
+        Runnable release = retain(response.req);
+        CompletableFuture<ResponseBuilder> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> executeAsync(response, release, future));
+        } catch (RuntimeException e) {
+            // e.g. rejected
+            release.run();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Whether an executed request ran out of time and returned partial results.
+     */
+    public static boolean isPartialResults(ResponseBuilder response) {
+        NamedList<Object> header = response.rsp.getResponseHeader();
+        return header != null && header.get(SolrQueryResponse.RESPONSE_HEADER_PARTIAL_RESULTS_KEY) != null;
+    }
+
+    /**
+     * Whether the last {@link #getDocSet()} or {@link #getHitCount()} ran out of time or stopped
+     * at {@link #maxHits(int)}, so its result is incomplete.
+     */
+    public boolean isPartialResults() {
+        return partialResults;
+    }
+
+    /**
+     * Compute the set of documents matching q and all fq of the parameters, without going through
+     * the search components. The components and all other parameters are ignored.
+     * <p>
+     * Like in the query component, fq are looked up in the filter cache. q is not cached, as it is
+     * usually specific to the request, its hits are collected on the cached filters instead. With
+     * a budget, only the first {@link #maxHits(int)} documents found in time are returned.
+     *
+     * @return The matching documents. Must not be modified, as it may be cached.
+     */
+    public DocSet getDocSet() throws IOException {
+        parseQuery();
+        partialResults = false;
+
+        SolrIndexSearcher searcher = queryRequest.getSearcher();
+        if (!isBounded()) {
+            if (originDocSet != null) {
+                return extraFilters.isEmpty() ? originDocSet : originDocSet.intersection(searcher.getDocSet(extraFilters));
+            }
+            if (query instanceof MatchAllDocsQuery) {
+                return filters.isEmpty() ? searcher.getLiveDocSet() : searcher.getDocSet(filters);
+            }
+        }
+
+        DocSetCollector collector = new DocSetCollector(searcher.maxDoc());
+        collect(collector);
+        return collector.getDocSet();
+    }
+
+    /**
+     * Compute the number of documents matching q and all fq of the parameters, without going
+     * through the search components. The components and all other parameters are ignored.
+     * <p>
+     * Like in the query component, fq are looked up in the filter cache. q is not cached, as it is
+     * usually specific to the request, its hits are counted on the cached filters instead. With a
+     * budget, at most {@link #maxHits(int)} documents found in time are counted.
+     *
+     * @return The number of matching documents.
+     */
+    public int getHitCount() throws IOException {
+        parseQuery();
+        partialResults = false;
+
+        SolrIndexSearcher searcher = queryRequest.getSearcher();
+        if (!isBounded()) {
+            if (originDocSet != null) {
+                return extraFilters.isEmpty() ? originDocSet.size() : originDocSet.intersectionSize(searcher.getDocSet(extraFilters));
+            }
+            if (query instanceof MatchAllDocsQuery) {
+                return filters.isEmpty() ? searcher.numDocs() : searcher.getDocSet(filters).size();
+            }
+        }
+
+        TotalHitCountCollector collector = new TotalHitCountCollector();
+        collect(collector);
+        return collector.getTotalHits();
+    }
+
+    /**
+     * Compute the facet counts of the parameters over the documents of {@link #getDocSet()},
+     * without going through the search components.
+     *
+     * @see #computeFacetCounts(DocSet)
+     */
+    public NamedList<Object> computeFacetCounts() throws IOException {
+        return computeFacetCounts(getDocSet());
+    }
+
+    /**
+     * Compute the facet counts of the parameters over the given documents, e.g. the DocSet of the
+     * origin or of a cached filter. Unlike {@link #useFacetComponent()} this does not execute a
+     * query. Field, query, range, interval and heatmap facets are supported like by the facet
+     * component; <code>facet=false</code>, e.g. of the unscored params, is ignored. Tag exclusions
+     * (<code>{!ex=...}</code>) apply to the fq of the parameters.
+     *
+     * @param docs Documents to facet.
+     * @return The facet counts, like <code>facet_counts</code> of the facet component.
+     */
+    public NamedList<Object> computeFacetCounts(DocSet docs) {
+        checkNotNull(docs, "Pre-condition violated: docs must not be null.");
+        checkNotNull(params, "Pre-condition violated: params must not be null.");
+
+        // tag exclusions need the parsed query and filters
+        parseQuery();
+        ResponseBuilder response = new ResponseBuilder(queryRequest, new SolrQueryResponse(), components);
+        response.setQuery(query);
+        response.setFilters(filters);
+
+        // range and query facets are parsed into the request context, like the facet component does in prepare
+        FacetComponent.FacetContext.initContext(response);
+
+        SolrParams facetParams = SolrParams.wrapDefaults(FACET_ENABLED, params);
+        return FacetComponent.getFacetCounts(new SimpleFacets(queryRequest, docs, facetParams, response));
+    }
+
+    //
+    // Helper
+    //
+
+    /**
+     * Records the sub-request for warming, if a recorder is registered for the core.
+     */
+    private void record(SolrParams requestParams) {
+        LocalRequestRecorder recorder = LocalRequestRecorder.get(origin.req.getCore());
+        if (recorder != null) {
+            recorder.record(components, requestParams);
+        }
+    }
+
+    private void record(LocalRequestKey key) {
+        LocalRequestRecorder recorder = LocalRequestRecorder.get(origin.req.getCore());
+        if (recorder != null) {
+            recorder.record(key);
+        }
+    }
+
+    private boolean isBounded() {
+        return timeAllowed > 0 || maxHits < Integer.MAX_VALUE;
+    }
 
-        request = new SearcherAwareLocalSolrQueryRequest(origin.req.getSearcher(), params);
+    /**
+     * Execute the request, calling the checkpoint before each component phase, e.g. to stop
+     * cancelled sub-requests.
+     */
+    static void execute(ResponseBuilder response, Runnable checkpoint) throws IOException {
+        Long timeout = SolrQueryTimeoutImpl.get();
+        boolean limited = limitTimeout(timeout, response.req.getParams().getLong(CommonParams.TIME_ALLOWED, 0L));
+        try {
+            LocalRequestMetrics metrics = LocalRequestMetrics.of(response);
+            if (metrics != null) {
+                metrics.execute(response, checkpoint);
+                return;
+            }
+
+            for (SearchComponent component : response.components) {
+                checkpoint.run();
+                component.prepare(response);
+            }
+            for (SearchComponent component : response.components) {
+                checkpoint.run();
+                component.process(response);
+            }
+        } finally {
+            if (limited) {
+                restoreTimeout(timeout);
+            }
+        }
+    }
 
+    /**
+     * Task of {@link #executeAsync(ResponseBuilder, Executor)}.
+     */
+    private static void executeAsync(ResponseBuilder response, Runnable release,
+                                     CompletableFuture<ResponseBuilder> future) {
+        try {
+            if (future.isDone()) {
+                // cancelled before start
+                return;
+            }
+
+            // not the one of the caller, whose close hooks would run here
+            SolrRequestInfo.setRequestInfo(new SolrRequestInfo(response.req, response.rsp));
+            try {
+                execute(response, () -> {
+                    if (future.isCancelled()) {
+                        throw new CancellationException();
+                    }
+                });
+            } finally {
+                SolrRequestInfo.clearRequestInfo();
+            }
+            // after the close hooks of the sub-request ran
+            future.complete(response);
+        } catch (Throwable e) {
+            // no-op if cancelled
+            future.completeExceptionally(e);
+        } finally {
+            release.run();
+        }
+    }
+
+    /**
+     * Keeps the request of an asynchronous execution usable until the execution stopped: held
+     * requests are retained, so the caller may close them at any time, e.g. on cancellation, for
+     * other requests the searcher is referenced.
+     *
+     * @return Releases the request or searcher.
+     */
+    private static Runnable retain(SolrQueryRequest request) {
+        if (request instanceof RefCountedLocalSolrQueryRequest) {
+            return ((RefCountedLocalSolrQueryRequest) request).retain()::close;
+        }
+        return SearcherReference.acquire(request.getSearcher())::release;
+    }
+
+    /**
+     * Returns the params of the sub-request: the params with the budget and the JSON facets of
+     * the origin applied.
+     */
+    private SolrParams requestParams() {
+        // JSON facets of the origin params are subject to the rules, only those of the body are added
+        Object originJsonFacets = null;
+        if (params.get(JSON_FACET) == null && origin.req.getParams().get(JSON_FACET) == null
+                && origin.req.getJSON() != null && facetModule) {
+            originJsonFacets = origin.req.getJSON().get(JSON_FACET_KEY);
+        }
+        if (!isBounded() && originJsonFacets == null) {
+            return params;
+        }
+
+        ModifiableSolrParams result = new ModifiableSolrParams(params);
+        if (originJsonFacets != null) {
+            // as param, so cache keys and replays include them
+            result.set(JSON_FACET, Utils.toJSONString(originJsonFacets));
+        }
+        long currentTimeAllowed = params.getLong(CommonParams.TIME_ALLOWED, 0L);
+        if (timeAllowed > 0 && (currentTimeAllowed <= 0 || timeAllowed < currentTimeAllowed)) {
+            result.set(CommonParams.TIME_ALLOWED, Long.toString(timeAllowed));
+        }
+        if (maxHits < Integer.MAX_VALUE && isSortedByScore(params)) {
+            result.set(CommonParams.MIN_EXACT_COUNT, maxHits);
+        }
+        return result;
+    }
+
+    /**
+     * Whether the params sort by score only, the only sort <code>minExactCount</code> applies to.
+     */
+    private static boolean isSortedByScore(SolrParams params) {
+        String sort = params.get(CommonParams.SORT);
+        return sort == null || sort.trim().isEmpty() || sort.trim().matches("(?i)score(\\s+desc)?");
+    }
+
+    /**
+     * Collects the documents matching q and all fq within the budget, if any. Only the fq are
+     * looked up in the filter cache.
+     */
+    private void collect(Collector collector) throws IOException {
+        SolrIndexSearcher searcher = queryRequest.getSearcher();
+
+        Long timeout = SolrQueryTimeoutImpl.get();
+        boolean limited = limitTimeout(timeout, timeAllowed);
+        try {
+            Query filtered = query;
+            if (!filters.isEmpty()) {
+                filtered = new BooleanQuery.Builder()
+                        .add(query, BooleanClause.Occur.MUST)
+                        .add(searcher.getDocSet(filters).getTopFilter(), BooleanClause.Occur.FILTER)
+                        .build();
+            }
+
+            if (maxHits < Integer.MAX_VALUE) {
+                collector = new EarlyTerminatingCollector(collector, maxHits);
+            }
+            if (timeAllowed > 0) {
+                collector = new TimeLimitingCollector(collector, TimeLimitingCollector.getGlobalCounter(), timeAllowed);
+            }
+
+            searcher.search(filtered, collector);
+        } catch (TimeLimitingCollector.TimeExceededException | ExitableDirectoryReader.ExitingReaderException |
+                 EarlyTerminatingCollectorException e) {
+            partialResults = true;
+        } finally {
+            if (limited) {
+                restoreTimeout(timeout);
+            }
+        }
+    }
+
+    /**
+     * Limits the query timeout of Solr for the current thread to the given time, if that is
+     * earlier than the current timeout.
+     *
+     * @param timeout Current timeout, see {@link SolrQueryTimeoutImpl#get()}.
+     * @param timeAllowed Time allowed in milliseconds, 0 or less for no limit.
+     * @return Whether the timeout has been changed and needs to be restored.
+     */
+    private static boolean limitTimeout(Long timeout, long timeAllowed) {
+        if (timeAllowed <= 0) {
+            return false;
+        }
+
+        long timeoutAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeAllowed);
+        if (timeout != null && timeout - timeoutAt <= 0) {
+            return false;
+        }
+
+        SolrQueryTimeoutImpl.set(timeAllowed);
+        return true;
+    }
+
+    /**
+     * Restores the query timeout of Solr for the current thread.
+     *
+     * @param timeout Timeout before {@link #limitTimeout(Long, long)}.
+     */
+    private static void restoreTimeout(Long timeout) {
+        if (timeout == null) {
+            SolrQueryTimeoutImpl.reset();
+        } else {
+            // set() is relative, round up to not shorten the timeout
+            long remaining = timeout - System.nanoTime();
+            SolrQueryTimeoutImpl.set(Math.max(0L, (remaining + 999999) / 1000000));
+        }
+    }
+
+    private LocalResponse executeUncached() throws IOException {
+        ResponseBuilder response = build();
+        try {
+            execute(response);
+            return LocalResponse.of(response);
+        } finally {
+            if (holdSearcher) {
+                response.req.close();
+            }
+        }
+    }
+
+    /**
+     * Create a response builder for the given request.
+     *
+     * @param components Unmodified components, e.g. of a recorded sub-request, see {@link SearchComponentResolver}.
+     */
+    static ResponseBuilder createResponseBuilder(SolrQueryRequest request, List<SearchComponent> components) {
+        boolean facetModule = SearchComponentResolver.of(components).get(FacetModule.class) != null;
+        return createResponseBuilder(request, components, true, facetModule);
+    }
+
+    /**
+     * Create a response builder for the given request.
+     *
+     * @param decorate    Whether to decorate the response like a top level request. Otherwise only
+     *                    the response header is added, e.g. for partial results.
+     * @param facetModule Whether the components contain a facet module.
+     */
+    private static ResponseBuilder createResponseBuilder(SolrQueryRequest request, List<SearchComponent> components,
+                                                         boolean decorate, boolean facetModule) {
         SolrQueryResponse checkResponse = new SolrQueryResponse();
-        SolrCore.preDecorateResponse(request, checkResponse);
+        if (decorate) {
+            SolrCore.preDecorateResponse(request, checkResponse);
+        } else {
+            checkResponse.addResponseHeader(new SimpleOrderedMap<>());
+        }
+
+        if (request.getJSON() == null && facetModule) {
+            setJsonFacets(request);
+        }
 
         ResponseBuilder response = new ResponseBuilder(request, checkResponse, components);
         response.doExpand = false;
@@ -118,20 +969,230 @@ public class SolrLocalResponseBuilder implements Closeable {
     }
 
     /**
-     * Execute request by calling the search components directly.
+     * Parses the <code>json.facet</code> params into the JSON of the request, like the search
+     * handler does for top level requests, where the facet module reads them from.
      */
-    public static void execute(ResponseBuilder response) throws IOException {
-        for (SearchComponent component : response.components) {
-            component.prepare(response);
+    @SuppressWarnings("unchecked")
+    private static void setJsonFacets(SolrQueryRequest request) {
+        String[] jsonFacets = request.getParams().getParams(JSON_FACET);
+        if (jsonFacets == null) {
+            return;
         }
-        for (SearchComponent component : response.components) {
-            component.process(response);
+
+        Map<String, Object> facets = new LinkedHashMap<>();
+        for (String jsonFacet : jsonFacets) {
+            Object parsed = Utils.fromJSONString(jsonFacet);
+            if (!(parsed instanceof Map)) {
+                throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, "Expected JSON object for " + JSON_FACET + ": " + jsonFacet);
+            }
+            facets.putAll((Map<String, Object>) parsed);
         }
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put(JSON_FACET_KEY, facets);
+        request.setJSON(json);
     }
 
-    //
-    // Helper
-    //
+    /**
+     * Returns the first component of the origin with the given class, or else the one registered
+     * in the core with the given name.
+     *
+     * @throws SolrException If there is no such component.
+     */
+    private <T extends SearchComponent> T resolve(Class<T> type, String name) {
+        T component = resolver.get(type);
+        if (component != null) {
+            return component;
+        }
+
+        SearchComponent registered = origin.req.getCore().getSearchComponent(name);
+        if (!type.isInstance(registered)) {
+            throw new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+                    "Missing search component " + name + " (" + type.getName() + ") in the origin and the core");
+        }
+        return type.cast(registered);
+    }
+
+    private void addComponent(SearchComponent component) {
+        components.add(component);
+        facetModule |= component instanceof FacetModule;
+    }
+
+    /**
+     * Whether the response of an executed request is complete and can be cached.
+     */
+    static boolean isCacheable(ResponseBuilder response) {
+        return !isPartialResults(response);
+    }
+
+    private SearcherAwareLocalSolrQueryRequest createRequest(SolrParams requestParams) {
+        if (holdSearcher) {
+            return new RefCountedLocalSolrQueryRequest(SearcherReference.incref(origin.req.getSearcher()), requestParams);
+        }
+        return new SearcherAwareLocalSolrQueryRequest(origin.req.getSearcher(), requestParams);
+    }
+
+    /**
+     * Prepares the request of the DocSet mode for the current params, if not prepared yet.
+     */
+    private void prepareQueryRequest() {
+        if (queryRequest != null && queryRequest.getParams() == params) {
+            return;
+        }
+
+        if (reuseRequest && queryRequest != null) {
+            queryRequest.reset(params);
+        } else {
+            if (queryRequest != null) {
+                queryRequest.close();
+            }
+            queryRequest = createRequest(params);
+        }
+    }
+
+    /**
+     * Parses q and fq of the parameters like the query component, if not parsed yet. Reuses the
+     * parsed query and filters of the origin instead, if seeded from it.
+     */
+    private void parseQuery() {
+        checkNotNull(params, "Pre-condition violated: params must not be null.");
+        if (query != null) {
+            return;
+        }
+
+        prepareQueryRequest();
+
+        originDocSet = null;
+        extraFilters = null;
+
+        try {
+            if (useOriginQuery && seedFromOrigin()) {
+                return;
+            }
+
+            QParser parser = QParser.getParser(params.get(CommonParams.Q),
+                    params.get(QueryParsing.DEFTYPE, QParserPlugin.DEFAULT_QTYPE), queryRequest);
+            Query parsedQuery = parser.getQuery();
+            query = parsedQuery != null ? parsedQuery : new MatchNoDocsQuery();
+            filters = parseFilters(filterQueries(params));
+        } catch (SyntaxError e) {
+            throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, e);
+        }
+    }
+
+    /**
+     * Seeds the DocSet mode with the query, filters and matching documents of the origin, if the
+     * params would parse to the same query and contain all fq of the origin, see
+     * {@link #useOriginQuery()}. Only the additional fq are parsed.
+     *
+     * @return Whether the DocSet mode has been seeded.
+     */
+    private boolean seedFromOrigin() throws SyntaxError {
+        QParser originParser = origin.getQparser();
+        DocListAndSet originResults = origin.getResults();
+        if (originParser == null || originResults == null || originResults.docSet == null || isPartialResults(origin)) {
+            return false;
+        }
+
+        // not modified by components, e.g. by elevation or a rank query
+        Query originQuery = origin.getQuery();
+        List<Query> originFilters = origin.getFilters() != null ? origin.getFilters() : Collections.emptyList();
+        List<String> originFqs = filterQueries(origin.req.getParams());
+        if (originQuery == null || originQuery != originParser.getQuery() || originFilters.size() != originFqs.size()) {
+            return false;
+        }
+        if (!isSameQuery(origin.req.getParams(), params, originFqs)) {
+            return false;
+        }
+
+        List<String> remaining = filterQueries(params);
+        for (String originFq : originFqs) {
+            if (!remaining.remove(originFq)) {
+                return false;
+            }
+        }
+
+        copyOriginTags();
+        List<Query> extra = parseFilters(remaining);
+        query = originQuery;
+        filters = new ArrayList<>(originFilters.size() + extra.size());
+        filters.addAll(originFilters);
+        filters.addAll(extra);
+        originDocSet = originResults.docSet;
+        extraFilters = extra;
+        return true;
+    }
+
+    /**
+     * Copies the tags of the local params parsed by the origin, e.g. <code>{!tag=...}</code> of
+     * its fq, so tag exclusions of facets apply to its reused filters.
+     */
+    @SuppressWarnings("unchecked")
+    private void copyOriginTags() {
+        Map<Object, Collection<Object>> originTags = (Map<Object, Collection<Object>>) origin.req.getContext().get(TAGS);
+        if (originTags != null) {
+            Map<Object, Collection<Object>> tags = new HashMap<>();
+            originTags.forEach((tag, parsers) -> tags.put(tag, new ArrayList<>(parsers)));
+            queryRequest.getContext().put(TAGS, tags);
+        }
+    }
+
+    /**
+     * Whether both params parse to queries matching the same documents: they must have the same
+     * {@link #QUERY_PARAMS} and the same params referenced by local params of q or the given fq.
+     * Params only affecting the score, e.g. pf, bf, bq and boost of edismax, are ignored.
+     */
+    private static boolean isSameQuery(SolrParams originParams, SolrParams params, List<String> fqs) {
+        for (String name : QUERY_PARAMS) {
+            if (!Arrays.equals(originParams.getParams(name), params.getParams(name))) {
+                return false;
+            }
+        }
+
+        List<String> references = new ArrayList<>(fqs);
+        references.add(originParams.get(CommonParams.Q, ""));
+        for (String reference : references) {
+            Matcher matcher = PARAM_REFERENCE.matcher(reference);
+            while (matcher.find()) {
+                if (!Arrays.equals(originParams.getParams(matcher.group(1)), params.getParams(matcher.group(1)))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses the given fq like the query component.
+     */
+    private List<Query> parseFilters(List<String> fqs) throws SyntaxError {
+        List<Query> result = new ArrayList<>();
+        for (String fq : fqs) {
+            QParser filterParser = QParser.getParser(fq, queryRequest);
+            filterParser.setIsFilter(true);
+            Query filter = filterParser.getQuery();
+            if (filter != null) {
+                result.add(filter);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the non-empty fq of the params.
+     */
+    private static List<String> filterQueries(SolrParams params) {
+        List<String> result = new ArrayList<>();
+        String[] fqs = params.getParams(CommonParams.FQ);
+        if (fqs != null) {
+            for (String fq : fqs) {
+                if (fq != null && !fq.trim().isEmpty()) {
+                    result.add(fq);
+                }
+            }
+        }
+        return result;
+    }
 
     /**
      * This takes the original incoming solr params and creates new solr query params
@@ -172,66 +1233,23 @@ public class SolrLocalResponseBuilder implements Closeable {
      * This takes the original incoming solr params and removes all scoring,
      * boosting, grouping, collapsing and expanding params. It furthermore
      * disables all spellchecking and query reductions.
+     *
+     * @see #UNSCORED_RULES
      */
     public static ModifiableSolrParams computeUnscoredSolrParams(SolrParams origParams) {
         checkNotNull(origParams, "Pre-condition violated: origParams must not be null.");
 
-        ModifiableSolrParams params = new ModifiableSolrParams(origParams);
-        params.remove(CommonParams.START);
-        params.set(CommonParams.FL, "id");
-        params.set(CommonParams.ROWS, "0");
-        params.remove(CommonParams.DEBUG);
-        params.remove(CommonParams.HEADER_ECHO_PARAMS);
-        params.remove(GroupParams.GROUP);
-
-        // remove boosting
-        params.remove(DisMaxParams.BF);
-        params.remove(DisMaxParams.BQ);
-        params.remove("boost");
-        params.remove("rq");
-        params.remove("rrq");
-
-        // remove phrase boosting
-        params.remove(DisMaxParams.PF);
-        params.remove(DisMaxParams.PF2);
-        params.remove(DisMaxParams.PF3);
-        params.remove(DisMaxParams.PS);
-        params.remove(DisMaxParams.PS2);
-        params.remove(DisMaxParams.PS3);
-
-        // disable elevation
-        params.set("enableElevation", "false");
-        params.set("forceElevation", "false");
-
-        // disable spellcheck & facetting
-        params.set("spellcheck", "false");
-        params.set(FacetParams.FACET, "false");
-        params.set("collapse", "false");
-        params.set("collapse.enable", "false");
-        params.set("expand", "false");
-        params.set("expand.append", "false");
-        params.set("ranking.barkeeper", "false");
-        params.set("facet.cache.static", "false");
-        params.set("boost.cache", "false");
-        params.set("bq.cache", "false");
-
-        // remove sorting
-        params.remove(CommonParams.SORT);
-        params.set(CommonParams.SORT, "_docid_ asc");
-
-        // remove waste
-        Set<String> waste = Sets.newHashSet(params.getParameterNames());
-        for (String param : waste) {
-            if (param.startsWith("spellcheck.")) {
-                params.remove(param);
-            } else if (param.startsWith("bmax.")) {
-                params.remove(param);
-            } else if (param.startsWith("boost.")) {
-                params.remove(param);
-            }
-        }
+        return UNSCORED_RULES.apply(origParams);
+    }
 
-        return params;
+    /**
+     * Create rules for unscored params from a configuration, based on {@link #UNSCORED_RULES}.
+     *
+     * @param config Configuration, may be null to use the default rules only.
+     * @see SolrParamsRewriteRules#fromNamedList(NamedList, SolrParamsRewriteRules)
+     */
+    public static SolrParamsRewriteRules unscoredRules(NamedList<?> config) {
+        return SolrParamsRewriteRules.fromNamedList(config, UNSCORED_RULES);
     }
 
     /**
@@ -252,6 +1270,24 @@ public class SolrLocalResponseBuilder implements Closeable {
         return queryComponent;
     }
 
+    /**
+     * Returns the facetModule in components and null if no FacetModule is
+     * present
+     */
+    public static FacetModule extractFacetModule(List<SearchComponent> components) {
+        FacetModule facetModule = null;
+        if (components != null) {
+            for (SearchComponent sc : components) {
+                if (sc instanceof FacetModule) {
+                    facetModule = (FacetModule) sc;
+                    break;
+                }
+            }
+        }
+
+        return facetModule;
+    }
+
     /**
      * Returns the facetComponent in components and null if no FacetComponent is
      * present
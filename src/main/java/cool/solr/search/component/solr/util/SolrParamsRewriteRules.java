@@ -0,0 +1,427 @@
+package cool.solr.search.component.solr.util;
+
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.MultiMapSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Precompiled set of rules rewriting {@link SolrParams}: removals of single params, removals of
+ * all params with a given prefix and overrides. The rules take effect in the order they have been
+ * added, as if they were applied one after another to a copy of the params. They are compiled once,
+ * {@link #apply(SolrParams)} then needs a single pass over the params.
+ * <p>
+ * Rules can be configured in <code>solrconfig.xml</code>, see {@link #fromNamedList(NamedList, SolrParamsRewriteRules)}.
+ * <p>
+ * Instances are immutable and thread safe.
+ */
+public final class SolrParamsRewriteRules {
+    /**
+     * Names of the configuration entries.
+     */
+    public static final String CONFIG_DEFAULTS = "defaults";
+    public static final String CONFIG_REMOVE = "remove";
+    public static final String CONFIG_REMOVE_PREFIX = "removePrefix";
+    public static final String CONFIG_SET = "set";
+
+    /**
+     * Names of removed params.
+     */
+    private final Set<String> removals;
+
+    /**
+     * Prefixes of removed params.
+     */
+    private final String[] prefixes;
+
+    /**
+     * Overrides in the order they have been added.
+     */
+    private final Map<String, String[]> overrides;
+
+    private SolrParamsRewriteRules(Set<String> removals, List<String> prefixes, Map<String, String[]> overrides) {
+        this.removals = removals;
+        this.prefixes = prefixes.toArray(new String[0]);
+        this.overrides = overrides;
+    }
+
+    /**
+     * Create a builder for rules.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Create rules from a configuration, e.g. the init args of a search component:
+     * <pre>
+     * &lt;lst name="unscoredParams"&gt;
+     *   &lt;bool name="defaults"&gt;true&lt;/bool&gt;
+     *   &lt;arr name="remove"&gt;&lt;str&gt;json.facet&lt;/str&gt;&lt;/arr&gt;
+     *   &lt;str name="removePrefix"&gt;ltr.&lt;/str&gt;
+     *   &lt;lst name="set"&gt;&lt;str name="rq.enable"&gt;false&lt;/str&gt;&lt;/lst&gt;
+     * &lt;/lst&gt;
+     * </pre>
+     * <code>remove</code>, <code>removePrefix</code> and <code>set</code> may occur multiple times
+     * and take effect in the given order, after the default rules. The default rules are used
+     * unless <code>defaults</code> is <code>false</code>.
+     *
+     * @param config   Configuration, may be null to use the default rules only.
+     * @param defaults Default rules.
+     * @throws SolrException If the configuration is invalid.
+     */
+    public static SolrParamsRewriteRules fromNamedList(NamedList<?> config, SolrParamsRewriteRules defaults) {
+        checkNotNull(defaults, "Pre-condition violated: defaults must not be null.");
+        if (config == null) {
+            return defaults;
+        }
+
+        Object useDefaults = config.get(CONFIG_DEFAULTS);
+        if (useDefaults != null && !(useDefaults instanceof Boolean)) {
+            throw invalidConfig(CONFIG_DEFAULTS, useDefaults);
+        }
+        Builder builder = Boolean.FALSE.equals(useDefaults) ? builder() : defaults.toBuilder();
+
+        for (Map.Entry<String, ?> entry : config) {
+            String name = entry.getKey();
+            Object value = entry.getValue();
+            if (CONFIG_REMOVE.equals(name)) {
+                for (String param : strings(name, value)) {
+                    builder.remove(param);
+                }
+            } else if (CONFIG_REMOVE_PREFIX.equals(name)) {
+                for (String prefix : strings(name, value)) {
+                    builder.removePrefix(prefix);
+                }
+            } else if (CONFIG_SET.equals(name)) {
+                if (!(value instanceof NamedList)) {
+                    throw invalidConfig(name, value);
+                }
+                for (Map.Entry<String, ?> override : (NamedList<?>) value) {
+                    List<String> values = strings(override.getKey(), override.getValue());
+                    if (override.getKey() == null || values.isEmpty()) {
+                        throw invalidConfig(name, value);
+                    }
+                    builder.set(override.getKey(), values.toArray(new String[0]));
+                }
+            } else if (!CONFIG_DEFAULTS.equals(name)) {
+                throw invalidConfig(name, value);
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Create a builder, which contains these rules.
+     */
+    public Builder toBuilder() {
+        // the compiled rules are equivalent to: removals, prefix removals, overrides
+        Builder builder = builder();
+        removals.forEach(builder::remove);
+        for (String prefix : prefixes) {
+            builder.removePrefix(prefix);
+        }
+        overrides.forEach(builder::set);
+        return builder;
+    }
+
+    /**
+     * Apply the rules to the given params.
+     *
+     * @param params Params to rewrite. Not modified.
+     * @return The rewritten params.
+     */
+    public ModifiableSolrParams apply(SolrParams params) {
+        checkNotNull(params, "Pre-condition violated: params must not be null.");
+
+        Map<String, String[]> result = new LinkedHashMap<>();
+        for (Iterator<String> names = params.getParameterNamesIterator(); names.hasNext(); ) {
+            String name = names.next();
+            if (!removals.contains(name) && !overrides.containsKey(name) && !hasRemovedPrefix(name)) {
+                result.put(name, params.getParams(name));
+            }
+        }
+        for (Map.Entry<String, String[]> override : overrides.entrySet()) {
+            result.put(override.getKey(), override.getValue().clone());
+        }
+
+        return new ModifiableSolrParams(result);
+    }
+
+    /**
+     * Create a memo for the results of these rules.
+     *
+     * @param maxEntries Maximum number of memoized results.
+     */
+    public Memo memo(int maxEntries) {
+        return new Memo(this, maxEntries);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SolrParamsRewriteRules[removals=%s, prefixes=%s, overrides=%s]",
+                removals, Arrays.toString(prefixes), overrides.keySet());
+    }
+
+    //
+    // Helper
+    //
+
+    /**
+     * Converts a config value of a single string or a list of strings. Other values are
+     * converted to strings, e.g. booleans of <code>set</code>.
+     */
+    private static List<String> strings(String name, Object value) {
+        if (value instanceof Collection) {
+            List<String> result = new ArrayList<>();
+            for (Object element : (Collection<?>) value) {
+                if (element == null || element instanceof NamedList) {
+                    throw invalidConfig(name, value);
+                }
+                result.add(element.toString());
+            }
+            return result;
+        } else if (value == null || value instanceof NamedList) {
+            throw invalidConfig(name, value);
+        }
+        return Collections.singletonList(value.toString());
+    }
+
+    private static SolrException invalidConfig(String name, Object value) {
+        return new SolrException(SolrException.ErrorCode.SERVER_ERROR,
+                "Invalid param rewrite rule configuration: " + name + "=" + value);
+    }
+
+    private boolean hasRemovedPrefix(String name) {
+        for (String prefix : prefixes) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builder for {@link SolrParamsRewriteRules}.
+     */
+    public static final class Builder {
+        private final Set<String> removals = new HashSet<>();
+        private final List<String> prefixes = new ArrayList<>();
+        private final Map<String, String[]> overrides = new LinkedHashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Remove the param of the given name.
+         *
+         * @return this for method chaining.
+         */
+        public Builder remove(String name) {
+            checkNotNull(name, "Pre-condition violated: name must not be null.");
+
+            overrides.remove(name);
+            removals.add(name);
+            return this;
+        }
+
+        /**
+         * Remove all params whose names start with the given prefix.
+         *
+         * @return this for method chaining.
+         */
+        public Builder removePrefix(String prefix) {
+            checkNotNull(prefix, "Pre-condition violated: prefix must not be null.");
+
+            overrides.keySet().removeIf(name -> name.startsWith(prefix));
+            if (!prefixes.contains(prefix)) {
+                prefixes.add(prefix);
+            }
+            return this;
+        }
+
+        /**
+         * Set the param of the given name to the given values, replacing all original values.
+         *
+         * @return this for method chaining.
+         */
+        public Builder set(String name, String... values) {
+            checkNotNull(name, "Pre-condition violated: name must not be null.");
+            checkNotNull(values, "Pre-condition violated: values must not be null.");
+            checkArgument(values.length > 0, "Pre-condition violated: values must not be empty.");
+
+            overrides.remove(name);
+            overrides.put(name, values.clone());
+            return this;
+        }
+
+        /**
+         * Compile the rules.
+         */
+        public SolrParamsRewriteRules build() {
+            return new SolrParamsRewriteRules(new HashSet<>(removals), prefixes, new LinkedHashMap<>(overrides));
+        }
+    }
+
+    /**
+     * Bounded LRU memo of rewritten params, keyed by the content of the incoming params,
+     * independent of the order of the params. Incoming requests with the same params, e.g.
+     * paging or repeated queries, and multiple sub-requests of the same request share a result.
+     * <p>
+     * Instances are thread safe.
+     */
+    public static final class Memo {
+        private final SolrParamsRewriteRules rules;
+        private final int maxEntries;
+
+        /**
+         * Results in access order, guarded by this.
+         */
+        private final Map<Key, SolrParams> results;
+
+        private long hits;
+        private long misses;
+
+        private Memo(SolrParamsRewriteRules rules, int maxEntries) {
+            checkArgument(maxEntries > 0, "Pre-condition violated: maxEntries must be positive.");
+
+            this.rules = rules;
+            this.maxEntries = maxEntries;
+            this.results = new LinkedHashMap<Key, SolrParams>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, SolrParams> eldest) {
+                    return size() > Memo.this.maxEntries;
+                }
+            };
+        }
+
+        /**
+         * Apply the rules to the given params.
+         *
+         * @param params Params to rewrite. Not modified.
+         * @return The rewritten params. The result is shared and read-only, use
+         * {@link cool.solr.search.solr.util.SolrParamsUtil#modifiable(SolrParams)} to modify it.
+         */
+        public SolrParams apply(SolrParams params) {
+            checkNotNull(params, "Pre-condition violated: params must not be null.");
+
+            Key probe = new Key(params);
+            synchronized (this) {
+                SolrParams result = results.get(probe);
+                if (result != null) {
+                    hits++;
+                    return result;
+                }
+                misses++;
+            }
+
+            SolrParams result = new MultiMapSolrParams(Collections.unmodifiableMap(rules.apply(params).getMap()));
+            Key key = probe.snapshot();
+            synchronized (this) {
+                results.put(key, result);
+            }
+            return result;
+        }
+
+        public synchronized int size() {
+            return results.size();
+        }
+
+        public synchronized long hitCount() {
+            return hits;
+        }
+
+        public synchronized long missCount() {
+            return misses;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("SolrParamsRewriteRules.Memo[size=%d, hits=%d, misses=%d]", results.size(), hits, misses);
+        }
+    }
+
+    /**
+     * Key of the memo. Probes reference the incoming params, stored keys a snapshot of them.
+     */
+    private static final class Key {
+        private final SolrParams params;
+        private final int size;
+        private final int hashCode;
+
+        Key(SolrParams params) {
+            this.params = params;
+
+            // order independent
+            int size = 0;
+            int hash = 0;
+            for (Iterator<String> names = params.getParameterNamesIterator(); names.hasNext(); ) {
+                String name = names.next();
+                hash += name.hashCode() ^ Arrays.hashCode(params.getParams(name));
+                size++;
+            }
+            this.size = size;
+            this.hashCode = hash;
+        }
+
+        private Key(SolrParams params, int size, int hashCode) {
+            this.params = params;
+            this.size = size;
+            this.hashCode = hashCode;
+        }
+
+        /**
+         * Copy of this key, independent of later modifications of the incoming params.
+         */
+        Key snapshot() {
+            Map<String, String[]> copy = new HashMap<>();
+            for (Iterator<String> names = params.getParameterNamesIterator(); names.hasNext(); ) {
+                String name = names.next();
+                String[] values = params.getParams(name);
+                copy.put(name, values != null ? values.clone() : null);
+            }
+            return new Key(new MultiMapSolrParams(copy), size, hashCode);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) obj;
+            if (hashCode != other.hashCode || size != other.size) {
+                return false;
+            }
+            for (Iterator<String> names = params.getParameterNamesIterator(); names.hasNext(); ) {
+                String name = names.next();
+                if (!Arrays.equals(params.getParams(name), other.params.getParams(name))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
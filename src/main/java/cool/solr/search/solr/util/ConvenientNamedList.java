@@ -52,14 +52,14 @@ public class ConvenientNamedList {
     * Returns the nested {@code NamedList} of the given name.
     */
    public ConvenientNamedList getNested(String name) {
-      return new ConvenientNamedList(NamedLists.navigate(namedList, name));
+      return wrap(get(NamedList.class, name));
    }
 
    /**
     * Returns the nested {@code NamedList} at the given path.
     */
    public ConvenientNamedList getNested(String... names) {
-      return new ConvenientNamedList(NamedLists.navigate(namedList, names));
+      return wrap(NamedLists.navigate(namedList, names));
    }
 
    /**
@@ -68,9 +68,9 @@ public class ConvenientNamedList {
     */
    public ConvenientNamedList getNested(int index) {
       try {
-         return new ConvenientNamedList(NamedLists.get(namedList, NamedList.class, index));
+         return wrap(NamedLists.get(namedList, NamedList.class, index));
       } catch (IndexOutOfBoundsException e) {
-         return new ConvenientNamedList(null);
+         return wrap(null);
       }
    }
 
@@ -82,7 +82,7 @@ public class ConvenientNamedList {
     *           not of the expected type, accessing the elements of the set will result in a {@link ClassCastException}.
     */
    public <T> Set<T> getSet(String name) {
-      return NamedLists.getSet(namedList, name);
+      return get(Set.class, name);
    }
 
    /**
@@ -94,7 +94,7 @@ public class ConvenientNamedList {
     *           {@link ClassCastException}.
     */
    public <T> List<T> getList(String name) {
-      return NamedLists.getList(namedList, name);
+      return get(List.class, name);
    }
 
    /**
@@ -105,14 +105,14 @@ public class ConvenientNamedList {
     *           not of the expected type, accessing the elements of the set will result in a {@link ClassCastException}.
     */
    public <T> Collection<T> getCollection(String name) {
-      return NamedLists.getCollection(namedList, name);
+      return get(Collection.class, name);
    }
 
    /**
     * Returns the string of the given name.
     */
    public String getString(String name) {
-      return NamedLists.getString(namedList, name);
+      return get(String.class, name);
    }
 
    /**
@@ -122,6 +122,23 @@ public class ConvenientNamedList {
       return namedList;
    }
 
+   /**
+    * Gets the element of the given name from the underlying list. All name based getters of this class use this method,
+    * subclasses may override it to provide a faster lookup.
+    *
+    * @see NamedLists#get(NamedList, Class, String)
+    */
+   protected <T> T get(Class<T> elementClass, String name) {
+      return NamedLists.get(namedList, elementClass, name);
+   }
+
+   /**
+    * Wraps a nested named list. Subclasses may override this method to return nested lists wrapped in their own type.
+    */
+   protected ConvenientNamedList wrap(NamedList<?> nested) {
+      return new ConvenientNamedList(nested);
+   }
+
    @Override
    public String toString() {
       return namedList != null ? namedList.toString() : "{}";
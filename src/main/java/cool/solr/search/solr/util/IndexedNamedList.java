@@ -0,0 +1,147 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cool.solr.search.solr.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * A {@link ConvenientNamedList} serving lookups by name from a hash index instead of a linear scan. The index maps
+ * every name to the index of its first occurrence, so lookups return the same values as {@link NamedList#get(String)}.
+ * It is built lazily on the first lookup, and only if the underlying list has at least {@code threshold} entries;
+ * smaller lists are scanned as usual. Nested lists are wrapped in an {@code IndexedNamedList} with the same threshold,
+ * sharing the indexes of the whole tree, so navigating to the same nested list again reuses its index.
+ * <p>
+ * The underlying list must not be modified after the first lookup, as the index would not reflect the modification.
+ * <p>
+ * The index costs roughly one hash map entry (about 50 bytes) per distinct name. Use this wrapper for large lists
+ * from which many elements are looked up, e.g. facet counts with many values.
+ */
+public class IndexedNamedList extends ConvenientNamedList {
+
+   /**
+    * Default minimum size of a list to build an index for.
+    */
+   public static final int DEFAULT_THRESHOLD = 32;
+
+   private final int threshold;
+
+   /**
+    * Indexes of all lists of the wrapped tree by list identity, shared with the wrappers of nested lists so that an index
+    * is built only once per list.
+    */
+   private final Map<NamedList<?>, Map<String, Integer>> indexes;
+
+   /**
+    * Index of this list, taken from {@link #indexes} on first use.
+    */
+   private volatile Map<String, Integer> index;
+
+   /**
+    * Creates a new indexed read-only wrapper for the given named list, using the {@link #DEFAULT_THRESHOLD}.
+    */
+   public IndexedNamedList(NamedList namedList) {
+      this(namedList, DEFAULT_THRESHOLD);
+   }
+
+   /**
+    * Creates a new indexed read-only wrapper for the given named list.
+    *
+    * @param threshold
+    *           the minimum size of a list to build an index for.
+    */
+   public IndexedNamedList(NamedList namedList, int threshold) {
+      this(namedList, threshold, Collections.synchronizedMap(new IdentityHashMap<>()));
+   }
+
+   private IndexedNamedList(NamedList namedList, int threshold, Map<NamedList<?>, Map<String, Integer>> indexes) {
+      super(namedList);
+      this.threshold = threshold;
+      this.indexes = indexes;
+   }
+
+   /**
+    * Returns whether lookups in this list are served from an index.
+    */
+   public boolean isIndexed() {
+      return size() >= threshold;
+   }
+
+   /**
+    * Returns the nested {@code NamedList} at the given path, looking up every path element in the index of its list.
+    */
+   @Override
+   public ConvenientNamedList getNested(String... names) {
+      if (names.length == 0) {
+         return wrap(null);
+      }
+
+      // like NamedLists.navigate, a missing or non-list element inside the path results in an empty list
+      ConvenientNamedList current = this;
+      for (int i = 0; i < names.length - 1; i++) {
+         Object value = current.get(Object.class, names[i]);
+         if (!(value instanceof NamedList)) {
+            return wrap(null);
+         }
+         current = wrap((NamedList<?>) value);
+      }
+      return current.getNested(names[names.length - 1]);
+   }
+
+   @Override
+   protected <T> T get(Class<T> elementClass, String name) {
+      if (!isIndexed()) {
+         return super.get(elementClass, name);
+      }
+
+      Integer position = index().get(name);
+      Object value = position != null ? getNamedList().getVal(position) : null;
+      try {
+         return elementClass.cast(value);
+      } catch (ClassCastException e) {
+         throw new NamedListEntryClassCastException(name, value.getClass(), elementClass);
+      }
+   }
+
+   @Override
+   protected ConvenientNamedList wrap(NamedList<?> nested) {
+      return new IndexedNamedList(nested, threshold, indexes);
+   }
+
+   //
+   // Helper
+   //
+
+   Map<String, Integer> index() {
+      Map<String, Integer> result = index;
+      if (result == null) {
+         result = indexes.computeIfAbsent(getNamedList(), IndexedNamedList::buildIndex);
+         index = result;
+      }
+      return result;
+   }
+
+   private static Map<String, Integer> buildIndex(NamedList<?> namedList) {
+      Map<String, Integer> result = new HashMap<>((int) (namedList.size() / 0.75f) + 1);
+      for (int i = 0; i < namedList.size(); i++) {
+         result.putIfAbsent(namedList.getName(i), i);
+      }
+      return result;
+   }
+}
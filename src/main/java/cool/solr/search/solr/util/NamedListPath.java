@@ -0,0 +1,129 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cool.solr.search.solr.util;
+
+import java.util.Arrays;
+
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * A precompiled path into nested named lists, for repeated access to the same element of responses with a stable
+ * shape. Returns the same values as {@link NamedLists#get(NamedList, Class, String...)}, but remembers the index at
+ * which each path element was found last time. On the next access the remembered index is verified by name and only
+ * if the name does not match, the list is scanned. For a stable response shape an access is therefore O(depth)
+ * instead of O(depth * size).
+ * <p>
+ * If a list contains the same name more than once and a remembered index points to a later occurrence of the name,
+ * that later element is returned. This can only happen if the shape of the accessed lists changes between calls.
+ * <p>
+ * Instances are thread safe and are meant to be stored in constants.
+ *
+ * @param <T>
+ *           the type of the element at the end of the path.
+ */
+public final class NamedListPath<T> {
+
+   private final Class<T> elementClass;
+   private final String[] names;
+
+   /**
+    * Remembered index per path element. Concurrent updates are benign, as every index is verified before it is used.
+    */
+   private final int[] hints;
+
+   private NamedListPath(Class<T> elementClass, String[] names) {
+      this.elementClass = elementClass;
+      this.names = names;
+      this.hints = new int[names.length];
+   }
+
+   /**
+    * Compiles a path.
+    *
+    * @param elementClass
+    *           the class of the element expected at the end of the path.
+    * @param names
+    *           the names of the path elements.
+    */
+   public static <T> NamedListPath<T> compile(Class<T> elementClass, String... names) {
+      if (elementClass == null || names == null) {
+         throw new NullPointerException("elementClass and names must not be null");
+      }
+      return new NamedListPath<>(elementClass, names.clone());
+   }
+
+   /**
+    * Gets the element at this path from the given list.
+    *
+    * @return the element, or {@code null} if the given list is {@code null}, any of the lists in the path does not
+    *         contain an element with the name of the path element, or the value is {@code null}.
+    * @throws NamedListEntryClassCastException
+    *            if the value stored in the list is not an instance of the element class of this path.
+    * @see NamedLists#get(NamedList, Class, String...)
+    */
+   public T get(NamedList<?> namedList) {
+      Object value = null;
+      NamedList<?> current = namedList;
+      for (int level = 0; level < names.length && current != null; level++) {
+         value = find(current, level);
+         current = value instanceof NamedList ? (NamedList<?>) value : null;
+         if (current == null && level < names.length - 1) {
+            value = null;
+         }
+      }
+
+      try {
+         return elementClass.cast(value);
+      } catch (ClassCastException e) {
+         throw new NamedListEntryClassCastException(names, value.getClass(), elementClass);
+      }
+   }
+
+   @Override
+   public String toString() {
+      return String.join(".", names) + " (" + elementClass.getSimpleName() + ")";
+   }
+
+   //
+   // Helper
+   //
+
+   private Object find(NamedList<?> namedList, int level) {
+      String name = names[level];
+
+      int index = hints[level];
+      if (index >= namedList.size() || !nameEquals(name, namedList.getName(index))) {
+         index = namedList.indexOf(name, 0);
+         if (index < 0) {
+            return null;
+         }
+         hints[level] = index;
+      }
+
+      return namedList.getVal(index);
+   }
+
+   private static boolean nameEquals(String name, String other) {
+      // identity first, path names and response names are usually the same string literals
+      return name == other || name != null && name.equals(other);
+   }
+
+   /**
+    * For testing: the remembered indexes.
+    */
+   int[] hints() {
+      return Arrays.copyOf(hints, hints.length);
+   }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cool.solr.search.solr.util;
+
+import org.apache.solr.common.util.NamedList;
+
+/**
+ * Receives the elements of a tree of nested named lists in document order, see
+ * {@link NamedLists#walk(NamedList, NamedListVisitor)}. Every value that is a {@link NamedList} is reported by a call
+ * to {@link #enterList(String, NamedList)}, followed by the elements of the list and a call to
+ * {@link #leaveList(String, NamedList)}. All other values, including {@code null}, are reported by a call to
+ * {@link #entry(String, Object)}.
+ */
+public interface NamedListVisitor {
+
+   /**
+    * Called before the elements of a list are visited. The root list is entered with the name {@code null}.
+    *
+    * @param name
+    *           the name under which the list is stored in its parent list.
+    * @param namedList
+    *           the list.
+    * @return {@code true} to visit the elements of the list, {@code false} to skip the list. If the list is skipped,
+    *         {@link #leaveList(String, NamedList)} is not called for it.
+    */
+   default boolean enterList(String name, NamedList<?> namedList) {
+      return true;
+   }
+
+   /**
+    * Called for every element of a visited list whose value is not a {@link NamedList}.
+    *
+    * @param name
+    *           the name of the element.
+    * @param value
+    *           the value of the element, may be {@code null}.
+    */
+   void entry(String name, Object value);
+
+   /**
+    * Called after all elements of an entered list have been visited.
+    *
+    * @param name
+    *           the name under which the list is stored in its parent list.
+    * @param namedList
+    *           the list.
+    */
+   default void leaveList(String name, NamedList<?> namedList) {
+   }
+}
@@ -16,6 +16,7 @@
 
 package cool.solr.search.solr.util;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
@@ -35,6 +36,9 @@ import org.apache.solr.common.util.NamedList;
  * <p>
  * All methods of this class throw a {@link NamedListEntryClassCastException} if an element does not have the expected
  * type.
+ * <p>
+ * For repeated access to the same path of responses with a stable shape, use a precompiled {@link NamedListPath}. To
+ * extract many elements from a large tree in one pass, use {@link #walk(NamedList, NamedListVisitor)}.
  */
 public final class NamedLists {
 
@@ -106,6 +110,61 @@ public final class NamedLists {
       return result;
    }
 
+   /**
+    * Walks the tree of nested named lists below the given list in document order and reports every element to the
+    * visitor, see {@link NamedListVisitor}. The tree is traversed with an explicit stack and without copying any names
+    * or values, so even deeply nested or large responses can be processed in a single pass. Subtrees are skipped if the
+    * visitor returns {@code false} from {@link NamedListVisitor#enterList(String, NamedList)}.
+    * <p>
+    * The tree must not contain cycles.
+    *
+    * @param namedList
+    *           the root list. If {@code null}, the visitor is not called.
+    * @param visitor
+    *           the visitor.
+    */
+   public static void walk(NamedList<?> namedList, NamedListVisitor visitor) {
+      if (namedList == null || !visitor.enterList(null, namedList)) {
+         return;
+      }
+
+      // stack of the entered lists with their names and the position of the next element to visit
+      NamedList<?>[] lists = new NamedList<?>[8];
+      String[] names = new String[8];
+      int[] positions = new int[8];
+      int depth = 0;
+      lists[0] = namedList;
+
+      while (depth >= 0) {
+         NamedList<?> current = lists[depth];
+         int position = positions[depth];
+         if (position >= current.size()) {
+            visitor.leaveList(names[depth], current);
+            lists[depth] = null;
+            names[depth] = null;
+            depth--;
+            continue;
+         }
+         positions[depth] = position + 1;
+
+         String name = current.getName(position);
+         Object value = current.getVal(position);
+         if (!(value instanceof NamedList)) {
+            visitor.entry(name, value);
+         } else if (visitor.enterList(name, (NamedList<?>) value)) {
+            depth++;
+            if (depth == lists.length) {
+               lists = Arrays.copyOf(lists, depth * 2);
+               names = Arrays.copyOf(names, depth * 2);
+               positions = Arrays.copyOf(positions, depth * 2);
+            }
+            lists[depth] = (NamedList<?>) value;
+            names[depth] = name;
+            positions[depth] = 0;
+         }
+      }
+   }
+
    /**
     * Gets the {@code Set} of the specified name from the given list.
     * 
@@ -0,0 +1,268 @@
+package cool.solr.search.solr.util.analyzing;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.solr.schema.SchemaField;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * LRU cache for analysis results. Results are keyed by analyzer identity, field name and input and
+ * are immutable. The cache is bounded by the number of entries and by its weight, which is the
+ * number of chars of all cached inputs and result terms. The least recently used entries are
+ * evicted if either bound is exceeded.
+ * <p>
+ * The cache holds strong references to the analyzers of its entries. Call {@link #clear()} if
+ * analyzers are replaced, e.g. on a schema reload.
+ * <p>
+ * Instances are thread safe. Analysis itself runs outside the lock, so concurrent misses for the
+ * same key may analyze the same input more than once.
+ */
+public class AnalysisCache {
+    /**
+     * Maximum number of entries.
+     */
+    private final int maxEntries;
+
+    /**
+     * Maximum weight of all entries.
+     */
+    private final long maxWeight;
+
+    /**
+     * Entries in access order, guarded by this.
+     */
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxEntries Maximum number of entries.
+     * @param maxWeight  Maximum number of chars of all cached inputs and result terms.
+     */
+    public AnalysisCache(int maxEntries, long maxWeight) {
+        checkArgument(maxEntries > 0, "Pre-condition violated: maxEntries must be positive.");
+        checkArgument(maxWeight > 0, "Pre-condition violated: maxWeight must be positive.");
+
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Cached version of {@link Analyzers#analyze(Analyzer, String)}.
+     *
+     * @return An immutable list of strings
+     */
+    public List<String> analyze(Analyzer analyzer, String input) throws IOException {
+        return analyzeField(analyzer, Analyzers.DEFAULT_FIELD_NAME, input);
+    }
+
+    /**
+     * Cached version of {@link Analyzers#analyze(SchemaField, String)}.
+     *
+     * @return An immutable list of strings
+     */
+    public List<String> analyze(SchemaField field, String input) throws IOException {
+        checkNotNull(field);
+
+        return analyzeField(field.getType().getQueryAnalyzer(), field.getName(), input);
+    }
+
+    /**
+     * Cached version of {@link Analyzers#analyzeField(Analyzer, String, String)}.
+     *
+     * @return An immutable list of strings
+     */
+    public List<String> analyzeField(Analyzer analyzer, String fieldName, String input) throws IOException {
+        Key key = new Key(analyzer, fieldName, input, false);
+
+        List<String> result = lookup(key);
+        if (result == null) {
+            result = ImmutableList.copyOf(Analyzers.analyzeField(analyzer, fieldName, input));
+
+            int resultWeight = 0;
+            for (String term : result) {
+                resultWeight += term.length();
+            }
+            put(key, result, resultWeight);
+        }
+
+        return result;
+    }
+
+    /**
+     * Cached version of {@link Analyzers#analyzeTokens(Analyzer, String)}.
+     *
+     * @return An immutable list of {@link Token}
+     */
+    public List<Token> analyzeTokens(Analyzer analyzer, String input) throws IOException {
+        return analyzeFieldTokens(analyzer, Analyzers.DEFAULT_FIELD_NAME, input);
+    }
+
+    /**
+     * Cached version of {@link Analyzers#analyzeTokens(SchemaField, String)}.
+     *
+     * @return An immutable list of {@link Token}
+     */
+    public List<Token> analyzeTokens(SchemaField field, String input) throws IOException {
+        checkNotNull(field);
+
+        return analyzeFieldTokens(field.getType().getQueryAnalyzer(), field.getName(), input);
+    }
+
+    /**
+     * Cached version of {@link Analyzers#analyzeFieldTokens(Analyzer, String, String)}.
+     *
+     * @return An immutable list of {@link Token}
+     */
+    public List<Token> analyzeFieldTokens(Analyzer analyzer, String fieldName, String input) throws IOException {
+        Key key = new Key(analyzer, fieldName, input, true);
+
+        List<Token> result = lookup(key);
+        if (result == null) {
+            result = ImmutableList.copyOf(Analyzers.analyzeFieldTokens(analyzer, fieldName, input));
+
+            int resultWeight = 0;
+            for (Token token : result) {
+                resultWeight += token.getName().length();
+            }
+            put(key, result, resultWeight);
+        }
+
+        return result;
+    }
+
+    /**
+     * Removes all entries. The statistics are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+
+    public synchronized long hitCount() {
+        return hits;
+    }
+
+    public synchronized long missCount() {
+        return misses;
+    }
+
+    public synchronized long evictionCount() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("AnalysisCache[size=%d, weight=%d, hits=%d, misses=%d, evictions=%d]",
+                entries.size(), weight, hits, misses, evictions);
+    }
+
+    //
+    // Helper
+    //
+
+    @SuppressWarnings("unchecked")
+    private synchronized <T> List<T> lookup(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        return (List<T>) entry.result;
+    }
+
+    private synchronized void put(Key key, List<?> result, int resultWeight) {
+        Entry entry = new Entry(result, key.input.length() + resultWeight);
+        if (entry.weight > maxWeight) {
+            // would evict everything else
+            return;
+        }
+
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            weight -= previous.weight;
+        }
+        weight += entry.weight;
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries || weight > maxWeight) {
+            weight -= eldest.next().weight;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Cache key. Analyzers are compared by identity.
+     */
+    private static final class Key {
+        private final Analyzer analyzer;
+        private final String fieldName;
+        private final String input;
+        private final boolean tokens;
+        private final int hashCode;
+
+        Key(Analyzer analyzer, String fieldName, String input, boolean tokens) {
+            this.analyzer = checkNotNull(analyzer);
+            this.fieldName = checkNotNull(fieldName);
+            this.input = checkNotNull(input);
+            this.tokens = tokens;
+
+            int hash = System.identityHashCode(analyzer);
+            hash = 31 * hash + fieldName.hashCode();
+            hash = 31 * hash + input.hashCode();
+            this.hashCode = 31 * hash + (tokens ? 1 : 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof Key) {
+                Key other = (Key) obj;
+                return analyzer == other.analyzer && tokens == other.tokens && hashCode == other.hashCode
+                        && fieldName.equals(other.fieldName) && input.equals(other.input);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Cached result with its weight.
+     */
+    private static final class Entry {
+        private final List<?> result;
+        private final int weight;
+
+        Entry(List<?> result, int weight) {
+            this.result = result;
+            this.weight = weight;
+        }
+    }
+}
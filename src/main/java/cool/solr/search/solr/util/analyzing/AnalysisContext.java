@@ -0,0 +1,202 @@
+package cool.solr.search.solr.util.analyzing;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.*;
+import org.apache.solr.schema.SchemaField;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reusable analysis state for repeated analysis with the same analyzer. Compared to the static
+ * methods in {@link Analyzers}, the input reader, the attribute references of the token stream and
+ * the result buffers are reused across calls.
+ * <p>
+ * Instances are not thread safe. Use one context per thread, e.g. through {@link #threadLocal(Analyzer)}.
+ * The results returned by a context are only valid until its next call.
+ */
+public class AnalysisContext {
+    /**
+     * Analyzer to be used.
+     */
+    private final Analyzer analyzer;
+
+    /**
+     * Name of the field the inputs are analyzed for.
+     */
+    private final String fieldName;
+
+    /**
+     * Reused results.
+     */
+    private final List<String> terms = new ArrayList<>();
+    private final List<String> termsView = Collections.unmodifiableList(terms);
+    private final TokenBuffer tokens = new TokenBuffer();
+
+    /**
+     * Token stream the cached attributes belong to. Lucene hands out the same token stream per
+     * thread and field, so the attributes only have to be looked up again if the stream changes.
+     */
+    private TokenStream tokenStream;
+    private CharTermAttribute charAttr;
+    private OffsetAttribute offsetAttribute;
+    private PositionLengthAttribute positionLength;
+    private PositionIncrementAttribute positionIncrementAttribute;
+    private TypeAttribute typeAttribute;
+
+    /**
+     * Creates a context for the given analyzer.
+     *
+     * @param analyzer Analyzer to be used.
+     */
+    public AnalysisContext(Analyzer analyzer) {
+        this(analyzer, Analyzers.DEFAULT_FIELD_NAME);
+    }
+
+    /**
+     * Creates a context for the given analyzer, analyzing inputs for the given field.
+     *
+     * @param analyzer  Analyzer to be used.
+     * @param fieldName Name of the field the inputs are analyzed for.
+     */
+    public AnalysisContext(Analyzer analyzer, String fieldName) {
+        this.analyzer = checkNotNull(analyzer);
+        this.fieldName = checkNotNull(fieldName);
+    }
+
+    /**
+     * Creates a context for the query analyzer of the given schema field.
+     *
+     * @param field Schema field whose query analyzer is used.
+     */
+    public AnalysisContext(SchemaField field) {
+        this(checkNotNull(field).getType().getQueryAnalyzer(), field.getName());
+    }
+
+    /**
+     * Returns a thread local providing one context per thread for the given analyzer.
+     *
+     * @param analyzer Analyzer to be used.
+     */
+    public static ThreadLocal<AnalysisContext> threadLocal(Analyzer analyzer) {
+        checkNotNull(analyzer);
+        return ThreadLocal.withInitial(() -> new AnalysisContext(analyzer));
+    }
+
+    public Analyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    /**
+     * Runs an input string through the analyzer.
+     *
+     * @param input Input to analyze.
+     * @return A read-only list of the trimmed, non-empty terms. Only valid until the next call.
+     * @see Analyzers#analyze(Analyzer, String)
+     */
+    public List<String> analyze(String input) throws IOException {
+        terms.clear();
+        analyzeInto(input, terms);
+
+        return termsView;
+    }
+
+    /**
+     * Runs an input string through the analyzer.
+     *
+     * @param input Input to analyze.
+     * @return The tokens. Only valid until the next call.
+     * @see Analyzers#analyzeTokens(Analyzer, String, TokenBuffer)
+     */
+    public TokenBuffer analyzeTokens(String input) throws IOException {
+        tokens.clear();
+        forEachToken(input, tokens);
+
+        return tokens;
+    }
+
+    /**
+     * Runs an input string through the analyzer and passes every token to the consumer.
+     *
+     * @param input    Input to analyze.
+     * @param consumer Receives the tokens.
+     * @see Analyzers#forEachToken(Analyzer, String, TokenConsumer)
+     */
+    public void forEachToken(String input, TokenConsumer consumer) throws IOException {
+        checkNotNull(input);
+        checkNotNull(consumer);
+
+        // the string variant reuses the reader of the analyzer's token stream components
+        TokenStream stream = analyzer.tokenStream(fieldName, input);
+        try {
+            // reset stream
+            stream.reset();
+            int wordPosition = 0;
+
+            // register attributes
+            if (stream != tokenStream) {
+                registerAttributes(stream);
+            }
+
+            // pass to consumer
+            while (stream.incrementToken()) {
+                wordPosition += positionIncrementAttribute.getPositionIncrement();
+                consumer.accept(charAttr, typeAttribute.type(), offsetAttribute.startOffset(),
+                        offsetAttribute.endOffset(), wordPosition - 1, positionLength.getPositionLength());
+            }
+        } finally {
+            TokenStreams.endQuietly(stream);
+            TokenStreams.closeQuietly(stream);
+        }
+    }
+
+    //
+    // Helper
+    //
+
+    /**
+     * Adds the trimmed, non-empty terms of the input to the given list.
+     */
+    void analyzeInto(String input, List<String> result) throws IOException {
+        forEachToken(input, (term, type, startOffset, endOffset, position, positionLength) -> {
+            String value = trimToNull(charAttr.buffer(), term.length());
+
+            if (value != null) {
+                result.add(value);
+            }
+        });
+    }
+
+    private void registerAttributes(TokenStream stream) {
+        charAttr = stream.addAttribute(CharTermAttribute.class);
+        offsetAttribute = stream.addAttribute(OffsetAttribute.class);
+        positionLength = stream.addAttribute(PositionLengthAttribute.class);
+        positionIncrementAttribute = stream.addAttribute(PositionIncrementAttribute.class);
+        typeAttribute = stream.addAttribute(TypeAttribute.class);
+        tokenStream = stream;
+    }
+
+    /**
+     * Creates the trimmed string of the given chars without an intermediate, untrimmed copy.
+     */
+    static String trimToNull(char[] chars, int length) {
+        int start = 0;
+        int end = length;
+        while (start < end && chars[start] <= ' ') {
+            start++;
+        }
+        while (end > start && chars[end - 1] <= ' ') {
+            end--;
+        }
+        return start < end ? new String(chars, start, end - start) : null;
+    }
+}
@@ -6,19 +6,43 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.*;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.SchemaField;
 
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * Analyzer utilities. This class is superseeded by the open source version in solr-analyzers.
+ * <p>
+ * For repeated analysis with the same analyzer, use an {@link AnalysisContext} to reuse attributes
+ * and result buffers across calls. Use an {@link AnalysisCache} to cache the results of frequently
+ * analyzed inputs.
+ * <p>
+ * Analyzers choose their analysis chain and reuse their token stream components per field. When
+ * analyzing for a specific field of a schema, pass the field (or its name) so that per-field
+ * analyzers like Solr's schema analyzers use the right chain and their cached components.
  *
  * @see TokenStream
  */
 public class Analyzers {
+    /**
+     * Field name passed to the analyzer by the methods without a field name parameter.
+     */
+    static final String DEFAULT_FIELD_NAME = "analyzer";
+
+    /**
+     * Number of chunks per worker for parallel analysis, to balance uneven inputs.
+     */
+    private static final int CHUNKS_PER_WORKER = 4;
 
     private Analyzers() {
     }
@@ -44,33 +68,104 @@ public class Analyzers {
      * @return A list of strings
      */
     public static List<String> analyze(Analyzer analyzer, String input) throws IOException {
-        checkNotNull(analyzer);
-        checkNotNull(input);
+        return analyzeField(analyzer, DEFAULT_FIELD_NAME, input);
+    }
 
-        List<String> result = Lists.newArrayList();
+    /**
+     * Runs an input string through the query analyzer of the given schema field.
+     *
+     * @param field Schema field whose query analyzer is used.
+     * @param input Input to analyze.
+     * @return A list of strings
+     */
+    public static List<String> analyze(SchemaField field, String input) throws IOException {
+        checkNotNull(field);
 
-        // get analyzed tokens
-        StringReader reader = new StringReader(input);
-        TokenStream tokenStream = analyzer.tokenStream("analyzer", reader);
-        try {
-            // reset stream
-            tokenStream.reset();
+        return analyzeField(field.getType().getQueryAnalyzer(), field.getName(), input);
+    }
 
-            // get attributes
-            CharTermAttribute charAttr = tokenStream.addAttribute(CharTermAttribute.class);
+    /**
+     * Runs an input string through the query analyzer of the given field of the schema.
+     *
+     * @param schema    Schema.
+     * @param fieldName Name of the field whose query analyzer is used.
+     * @param input     Input to analyze.
+     * @return A list of strings
+     * @throws org.apache.solr.common.SolrException if the schema does not contain the field.
+     */
+    public static List<String> analyze(IndexSchema schema, String fieldName, String input) throws IOException {
+        checkNotNull(schema);
 
-            // read into candidate map
-            while (tokenStream.incrementToken()) {
-                String value = StringUtils.trimToNull(charAttr.toString());
+        return analyze(schema.getField(fieldName), input);
+    }
 
-                if (value != null) {
-                    result.add(value);
-                }
+    /**
+     * Runs an input string through the given analyzer, for the given field.
+     *
+     * @param analyzer  Analyzer to be used.
+     * @param fieldName Name of the field the input is analyzed for.
+     * @param input     Input to analyze.
+     * @return A list of strings
+     */
+    public static List<String> analyzeField(Analyzer analyzer, String fieldName, String input) throws IOException {
+        List<String> result = Lists.newArrayList();
+
+        forEachToken(analyzer, fieldName, input, (term, type, startOffset, endOffset, position, positionLength) -> {
+            String value = StringUtils.trimToNull(term.toString());
+
+            if (value != null) {
+                result.add(value);
             }
-        } finally {
-            TokenStreams.endQuietly(tokenStream);
-            TokenStreams.closeQuietly(tokenStream);
-            TokenStreams.closeQuietly(reader);
+        });
+
+        return result;
+    }
+
+    /**
+     * Runs all input strings through the given analyzer. The analysis state is reused from one input
+     * to the next.
+     *
+     * @param analyzer Analyzer to be used.
+     * @param inputs   Inputs to analyze.
+     * @return A list of the results of {@link #analyze(Analyzer, String)}, in input order.
+     */
+    public static List<List<String>> analyzeAll(Analyzer analyzer, Collection<String> inputs) throws IOException {
+        checkNotNull(inputs);
+
+        AnalysisContext context = new AnalysisContext(analyzer);
+        List<List<String>> result = Lists.newArrayListWithCapacity(inputs.size());
+        for (String input : inputs) {
+            List<String> terms = Lists.newArrayList();
+            context.analyzeInto(input, terms);
+            result.add(terms);
+        }
+
+        return result;
+    }
+
+    /**
+     * Runs all input strings through the given analyzer, in parallel using the given pool. The
+     * inputs are split into chunks, each chunk is analyzed by one worker reusing its analysis state.
+     *
+     * @param analyzer Analyzer to be used.
+     * @param inputs   Inputs to analyze.
+     * @param pool     Pool to run the analysis in.
+     * @return A list of the results of {@link #analyze(Analyzer, String)}, in input order.
+     */
+    public static List<List<String>> analyzeAll(Analyzer analyzer, Collection<String> inputs, ForkJoinPool pool)
+            throws IOException {
+        checkNotNull(analyzer);
+        checkNotNull(inputs);
+        checkNotNull(pool);
+
+        List<String> inputList = inputs instanceof RandomAccess ? (List<String>) inputs : Lists.newArrayList(inputs);
+        List<List<String>> result = Lists.newArrayList(Collections.nCopies(inputList.size(), (List<String>) null));
+        int chunkSize = Math.max(1, inputList.size() / (pool.getParallelism() * CHUNKS_PER_WORKER));
+
+        try {
+            pool.invoke(new AnalyzeAllTask(analyzer, inputList, result, 0, inputList.size(), chunkSize));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
 
         return result;
@@ -85,14 +180,125 @@ public class Analyzers {
      * @return A list of {@link Token}
      */
     public static List<Token> analyzeTokens(Analyzer analyzer, String input) throws IOException {
-        checkNotNull(analyzer);
-        checkNotNull(input);
+        return analyzeFieldTokens(analyzer, DEFAULT_FIELD_NAME, input);
+    }
 
+    /**
+     * Runs an input string through the query analyzer of the given schema field and returns most
+     * available attributes extracted.
+     *
+     * @param field Schema field whose query analyzer is used.
+     * @param input Input to analyze.
+     * @return A list of {@link Token}
+     */
+    public static List<Token> analyzeTokens(SchemaField field, String input) throws IOException {
+        checkNotNull(field);
+
+        return analyzeFieldTokens(field.getType().getQueryAnalyzer(), field.getName(), input);
+    }
+
+    /**
+     * Runs an input string through the query analyzer of the given field of the schema and returns
+     * most available attributes extracted.
+     *
+     * @param schema    Schema.
+     * @param fieldName Name of the field whose query analyzer is used.
+     * @param input     Input to analyze.
+     * @return A list of {@link Token}
+     * @throws org.apache.solr.common.SolrException if the schema does not contain the field.
+     */
+    public static List<Token> analyzeTokens(IndexSchema schema, String fieldName, String input) throws IOException {
+        checkNotNull(schema);
+
+        return analyzeTokens(schema.getField(fieldName), input);
+    }
+
+    /**
+     * Runs an input string through the given analyzer, for the given field, and returns most
+     * available attributes extracted.
+     *
+     * @param analyzer  Analyzer to be used.
+     * @param fieldName Name of the field the input is analyzed for.
+     * @param input     Input to analyze.
+     * @return A list of {@link Token}
+     */
+    public static List<Token> analyzeFieldTokens(Analyzer analyzer, String fieldName, String input) throws IOException {
         List<Token> result = Lists.newArrayList();
 
-        // get analyzed tokens
-        StringReader reader = new StringReader(input);
-        TokenStream tokenStream = analyzer.tokenStream("analyzer", reader);
+        forEachToken(analyzer, fieldName, input, (term, type, startOffset, endOffset, position, positionLength) ->
+                result.add(new Token(term.toString(), type, new Position(startOffset, endOffset, position), positionLength)));
+
+        return result;
+    }
+
+    /**
+     * Runs an input string through the given analyzer and fills the given buffer with the tokens.
+     * The buffer is cleared first. Use this instead of {@link #analyzeTokens(Analyzer, String)}
+     * to avoid per-token allocations, {@link Token} instances are only created on request.
+     *
+     * @param analyzer Analyzer to be used.
+     * @param input    Input to analyze.
+     * @param buffer   Buffer to fill, may be reused across calls.
+     * @return The given buffer.
+     */
+    public static TokenBuffer analyzeTokens(Analyzer analyzer, String input, TokenBuffer buffer) throws IOException {
+        return analyzeTokens(analyzer, DEFAULT_FIELD_NAME, input, buffer);
+    }
+
+    /**
+     * Runs an input string through the given analyzer, for the given field, and fills the given
+     * buffer with the tokens. The buffer is cleared first.
+     *
+     * @param analyzer  Analyzer to be used.
+     * @param fieldName Name of the field the input is analyzed for.
+     * @param input     Input to analyze.
+     * @param buffer    Buffer to fill, may be reused across calls.
+     * @return The given buffer.
+     * @see #analyzeTokens(Analyzer, String, TokenBuffer)
+     */
+    public static TokenBuffer analyzeTokens(Analyzer analyzer, String fieldName, String input, TokenBuffer buffer)
+            throws IOException {
+        checkNotNull(buffer);
+
+        buffer.clear();
+        forEachToken(analyzer, fieldName, input, buffer);
+
+        return buffer;
+    }
+
+    /**
+     * Runs an input string through the given analyzer and passes every token to the consumer.
+     * No objects are allocated per token, the consumer receives the live term attribute of the
+     * token stream. Unlike {@link #analyze(Analyzer, String)}, terms are not trimmed and empty
+     * terms are not skipped.
+     *
+     * @param analyzer Analyzer to be used.
+     * @param input    Input to analyze.
+     * @param consumer Receives the tokens.
+     */
+    public static void forEachToken(Analyzer analyzer, String input, TokenConsumer consumer) throws IOException {
+        forEachToken(analyzer, DEFAULT_FIELD_NAME, input, consumer);
+    }
+
+    /**
+     * Runs an input string through the given analyzer, for the given field, and passes every token
+     * to the consumer.
+     *
+     * @param analyzer  Analyzer to be used.
+     * @param fieldName Name of the field the input is analyzed for.
+     * @param input     Input to analyze.
+     * @param consumer  Receives the tokens.
+     * @see #forEachToken(Analyzer, String, TokenConsumer)
+     */
+    public static void forEachToken(Analyzer analyzer, String fieldName, String input, TokenConsumer consumer)
+            throws IOException {
+        checkNotNull(analyzer);
+        checkNotNull(fieldName);
+        checkNotNull(input);
+        checkNotNull(consumer);
+
+        // get analyzed tokens, the string variant reuses the reader of the token stream components
+        TokenStream tokenStream = analyzer.tokenStream(fieldName, input);
         try {
             // reset stream
             tokenStream.reset();
@@ -106,19 +312,58 @@ public class Analyzers {
                     .addAttribute(PositionIncrementAttribute.class);
             TypeAttribute typeAttribute = tokenStream.addAttribute(TypeAttribute.class);
 
-            // read into candidate map
+            // pass to consumer
             while (tokenStream.incrementToken()) {
                 wordPosition += positionIncrementAttribute.getPositionIncrement();
-                result.add(new Token(charAttr.toString(), typeAttribute.type(), new Position(offsetAttribute.startOffset(),
-                        offsetAttribute
-                                .endOffset(), wordPosition - 1), positionLength.getPositionLength()));
+                consumer.accept(charAttr, typeAttribute.type(), offsetAttribute.startOffset(),
+                        offsetAttribute.endOffset(), wordPosition - 1, positionLength.getPositionLength());
             }
         } finally {
             TokenStreams.endQuietly(tokenStream);
             TokenStreams.closeQuietly(tokenStream);
-            TokenStreams.closeQuietly(reader);
         }
+    }
 
-        return result;
+    /**
+     * Analyzes a range of the inputs of {@link #analyzeAll(Analyzer, Collection, ForkJoinPool)},
+     * splitting it until it is not larger than the chunk size.
+     */
+    private static class AnalyzeAllTask extends RecursiveAction {
+        private final Analyzer analyzer;
+        private final List<String> inputs;
+        private final List<List<String>> result;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+
+        AnalyzeAllTask(Analyzer analyzer, List<String> inputs, List<List<String>> result, int from, int to, int chunkSize) {
+            this.analyzer = analyzer;
+            this.inputs = inputs;
+            this.result = result;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > chunkSize) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new AnalyzeAllTask(analyzer, inputs, result, from, middle, chunkSize),
+                        new AnalyzeAllTask(analyzer, inputs, result, middle, to, chunkSize));
+                return;
+            }
+
+            AnalysisContext context = new AnalysisContext(analyzer);
+            try {
+                for (int i = from; i < to; i++) {
+                    List<String> terms = Lists.newArrayList();
+                    context.analyzeInto(inputs.get(i), terms);
+                    result.set(i, terms);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
     }
 }
@@ -8,11 +8,23 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 public class Position {
 
-    private final Integer start;
-    private final Integer end;
-    private final Integer wordPosition;
+    private final int start;
+    private final int end;
+    private final int wordPosition;
 
+    /**
+     * Boxed variant of {@link #Position(int, int, int)}. Unlike before values are stored as
+     * primitives, so <code>null</code> is rejected.
+     *
+     * @throws NullPointerException If any argument is <code>null</code>.
+     */
     public Position(Integer start, Integer end, Integer wordPosition) {
+        this(checkNotNull(start, "Pre-condition violated: start must not be null.").intValue(),
+                checkNotNull(end, "Pre-condition violated: end must not be null.").intValue(),
+                checkNotNull(wordPosition, "Pre-condition violated: wordPosition must not be null.").intValue());
+    }
+
+    public Position(int start, int end, int wordPosition) {
         this.start = start;
         this.end = end;
         this.wordPosition = wordPosition;
@@ -30,28 +42,49 @@ public class Position {
         return wordPosition;
     }
 
+    /**
+     * Like {@link #getStart()}, without boxing.
+     */
+    public int getStartAsInt() {
+        return start;
+    }
+
+    /**
+     * Like {@link #getEnd()}, without boxing.
+     */
+    public int getEndAsInt() {
+        return end;
+    }
+
+    /**
+     * Like {@link #getWordPosition()}, without boxing.
+     */
+    public int getWordPositionAsInt() {
+        return wordPosition;
+    }
+
     public boolean matches(Position other) {
         checkNotNull(other, "Pre-condition violated: other must not be null.");
 
-        return getStart().equals(other.getStart()) && getEnd().equals(other.getEnd());
+        return start == other.start && end == other.end;
     }
 
     public boolean contains(Position other) {
         checkNotNull(other, "Pre-condition violated: other must not be null.");
 
-        return getStart() <= other.getStart() && getEnd() >= other.getEnd();
+        return start <= other.start && end >= other.end;
     }
 
     @Override
     public int hashCode() {
-        return (start != null ? start.hashCode() : 0) + (end != null ? end.hashCode() : 0);
+        return start + end;
     }
 
     @Override
     public boolean equals(Object obj) {
         if (obj != null && obj instanceof Position) {
             Position other = (Position) obj;
-            return other.getStart().equals(getStart()) && other.getEnd().equals(getEnd());
+            return other.start == start && other.end == end;
         }
         return false;
     }
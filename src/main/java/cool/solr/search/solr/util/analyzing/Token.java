@@ -30,16 +30,30 @@ public class Token {
     /**
      * Of how many token does this token exists.
      */
-    private final Integer tokenCount;
+    private final int tokenCount;
 
     public Token(String name, Position positionInOriginal, Integer tokenCount) {
         this(name, null, positionInOriginal, tokenCount);
     }
 
+    public Token(String name, Position positionInOriginal, int tokenCount) {
+        this(name, null, positionInOriginal, tokenCount);
+    }
+
+    /**
+     * Boxed variant of {@link #Token(String, String, Position, int)}, rejecting a
+     * <code>null</code> token count.
+     *
+     * @throws NullPointerException If name, position or token count is <code>null</code>.
+     */
     public Token(String name, String type, Position positionInOriginal, Integer tokenCount) {
+        this(name, type, positionInOriginal,
+                checkNotNull(tokenCount, "Pre-condition violated: tokenCount must not be null.").intValue());
+    }
+
+    public Token(String name, String type, Position positionInOriginal, int tokenCount) {
         checkNotNull(name, "Pre-condition violated: name must not be null.");
         checkNotNull(positionInOriginal, "Pre-condition violated: positionInOriginal must not be null.");
-        checkNotNull(tokenCount, "Pre-condition violated: tokenCount must not be null.");
 
         this.type = type;
         this.position = positionInOriginal;
@@ -59,6 +73,13 @@ public class Token {
         return tokenCount;
     }
 
+    /**
+     * Like {@link #getTokenCount()}, without boxing.
+     */
+    public int getTokenCountAsInt() {
+        return tokenCount;
+    }
+
     public String getType() {
         return type;
     }
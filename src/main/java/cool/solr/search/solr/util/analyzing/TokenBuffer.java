@@ -0,0 +1,201 @@
+package cool.solr.search.solr.util.analyzing;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.util.ArrayUtil;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+/**
+ * Packed, reusable storage for analyzed tokens. Offsets, positions and lengths are stored in
+ * <code>int</code> arrays, the terms of all tokens share a single <code>char</code> array. No
+ * objects are allocated per token once the buffer has grown to its working size. The
+ * object-based {@link Token} view of a token is only created when asked for.
+ * <p>
+ * Instances are not thread safe.
+ *
+ * @see Analyzers#analyzeTokens(org.apache.lucene.analysis.Analyzer, String, TokenBuffer)
+ */
+public class TokenBuffer implements TokenConsumer {
+
+    private static final int INITIAL_TOKENS = 8;
+    private static final int INITIAL_CHARS = 64;
+
+    private int size;
+
+    private char[] termChars = new char[INITIAL_CHARS];
+    private int termCharsUsed;
+
+    private int[] termOffsets = new int[INITIAL_TOKENS];
+    private int[] termLengths = new int[INITIAL_TOKENS];
+    private int[] startOffsets = new int[INITIAL_TOKENS];
+    private int[] endOffsets = new int[INITIAL_TOKENS];
+    private int[] positions = new int[INITIAL_TOKENS];
+    private int[] positionLengths = new int[INITIAL_TOKENS];
+    private String[] types = new String[INITIAL_TOKENS];
+
+    /**
+     * Lazily created {@link Token} views.
+     */
+    private Token[] tokens = new Token[INITIAL_TOKENS];
+
+    /**
+     * Removes all tokens, but keeps the allocated storage for reuse.
+     */
+    public void clear() {
+        Arrays.fill(types, 0, size, null);
+        Arrays.fill(tokens, 0, size, null);
+        size = 0;
+        termCharsUsed = 0;
+    }
+
+    /**
+     * Appends a token. The term is copied into the buffer.
+     */
+    @Override
+    public void accept(CharSequence term, String type, int startOffset, int endOffset, int position, int positionLength) {
+        if (size == positions.length) {
+            grow();
+        }
+
+        int length = term.length();
+        termChars = ArrayUtil.grow(termChars, termCharsUsed + length);
+        if (term instanceof CharTermAttribute) {
+            System.arraycopy(((CharTermAttribute) term).buffer(), 0, termChars, termCharsUsed, length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                termChars[termCharsUsed + i] = term.charAt(i);
+            }
+        }
+
+        termOffsets[size] = termCharsUsed;
+        termLengths[size] = length;
+        startOffsets[size] = startOffset;
+        endOffsets[size] = endOffset;
+        positions[size] = position;
+        positionLengths[size] = positionLength;
+        types[size] = type;
+
+        termCharsUsed += length;
+        size++;
+    }
+
+    /**
+     * Returns the number of tokens in this buffer.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the shared term buffer. The term of token <code>index</code> starts at
+     * {@link #termOffset(int)} and is {@link #termLength(int)} chars long.
+     */
+    public char[] termBuffer() {
+        return termChars;
+    }
+
+    public int termOffset(int index) {
+        checkElementIndex(index, size);
+        return termOffsets[index];
+    }
+
+    public int termLength(int index) {
+        checkElementIndex(index, size);
+        return termLengths[index];
+    }
+
+    /**
+     * Returns the term of the given token as a new string.
+     */
+    public String term(int index) {
+        checkElementIndex(index, size);
+        return new String(termChars, termOffsets[index], termLengths[index]);
+    }
+
+    public String type(int index) {
+        checkElementIndex(index, size);
+        return types[index];
+    }
+
+    public int startOffset(int index) {
+        checkElementIndex(index, size);
+        return startOffsets[index];
+    }
+
+    public int endOffset(int index) {
+        checkElementIndex(index, size);
+        return endOffsets[index];
+    }
+
+    /**
+     * Returns the word position of the given token, starting with 0.
+     */
+    public int position(int index) {
+        checkElementIndex(index, size);
+        return positions[index];
+    }
+
+    public int positionLength(int index) {
+        checkElementIndex(index, size);
+        return positionLengths[index];
+    }
+
+    /**
+     * Returns the {@link Token} view of the given token. The view is created on first access and
+     * stays valid after the buffer is cleared.
+     */
+    public Token token(int index) {
+        checkElementIndex(index, size);
+
+        Token token = tokens[index];
+        if (token == null) {
+            token = new Token(term(index), types[index],
+                    new Position(startOffsets[index], endOffsets[index], positions[index]), positionLengths[index]);
+            tokens[index] = token;
+        }
+        return token;
+    }
+
+    /**
+     * Returns a read-only list view of the tokens in this buffer. The {@link Token} views are
+     * created on access. The list reflects the current content of the buffer.
+     */
+    public List<Token> tokens() {
+        return new AbstractList<Token>() {
+            @Override
+            public Token get(int index) {
+                return token(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return tokens().toString();
+    }
+
+    //
+    // Helper
+    //
+
+    private void grow() {
+        int capacity = ArrayUtil.oversize(size + 1, Integer.BYTES);
+        termOffsets = Arrays.copyOf(termOffsets, capacity);
+        termLengths = Arrays.copyOf(termLengths, capacity);
+        startOffsets = Arrays.copyOf(startOffsets, capacity);
+        endOffsets = Arrays.copyOf(endOffsets, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        positionLengths = Arrays.copyOf(positionLengths, capacity);
+        types = Arrays.copyOf(types, capacity);
+        tokens = Arrays.copyOf(tokens, capacity);
+    }
+}
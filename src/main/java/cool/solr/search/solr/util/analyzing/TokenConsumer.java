@@ -0,0 +1,29 @@
+package cool.solr.search.solr.util.analyzing;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+import java.io.IOException;
+
+/**
+ * Receives the tokens of an analyzed input one after another, without any per-token allocation.
+ *
+ * @see Analyzers#forEachToken(org.apache.lucene.analysis.Analyzer, String, TokenConsumer)
+ */
+@FunctionalInterface
+public interface TokenConsumer {
+
+    /**
+     * Called for every token emitted by the token stream.
+     *
+     * @param term           The live {@link CharTermAttribute} of the token stream. It is only valid
+     *                       during this call and must be copied (e.g. by <code>toString()</code>) if it
+     *                       has to be retained.
+     * @param type           Type of the token.
+     * @param startOffset    Start offset of the token in the input.
+     * @param endOffset      End offset of the token in the input.
+     * @param position       Word position of the token, starting with 0.
+     * @param positionLength Of how many positions this token consists.
+     */
+    void accept(CharSequence term, String type, int startOffset, int endOffset, int position, int positionLength)
+            throws IOException;
+}
@@ -0,0 +1,70 @@
+package cool.solr.search.component.solr.query;
+
+import cool.solr.search.component.solr.util.EmbeddedCoreFixture;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class RefCountedLocalSolrQueryRequestTest {
+
+    private static EmbeddedCoreFixture fixture;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        fixture = new EmbeddedCoreFixture(10);
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws IOException {
+        fixture.close();
+    }
+
+    @Test
+    public void testClose() {
+        int refCount = fixture.registeredSearcherRefCount();
+
+        RefCountedLocalSolrQueryRequest request = new RefCountedLocalSolrQueryRequest(
+                fixture.core().getRegisteredSearcher(), new ModifiableSolrParams());
+        assertEquals(refCount + 1, fixture.registeredSearcherRefCount());
+
+        request.close();
+        assertNull(request.getSearcher());
+        assertEquals(refCount, fixture.registeredSearcherRefCount());
+
+        // no-op
+        request.close();
+        assertEquals(refCount, fixture.registeredSearcherRefCount());
+    }
+
+    @Test
+    public void testRetain() {
+        int refCount = fixture.registeredSearcherRefCount();
+
+        RefCountedLocalSolrQueryRequest request = new RefCountedLocalSolrQueryRequest(
+                fixture.core().getRegisteredSearcher(), new ModifiableSolrParams());
+        assertSame(request, request.retain());
+
+        // still used by the retaining user
+        request.close();
+        assertNotNull(request.getSearcher());
+        assertEquals(refCount + 1, fixture.registeredSearcherRefCount());
+
+        request.close();
+        assertNull(request.getSearcher());
+        assertEquals(refCount, fixture.registeredSearcherRefCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRetain_closed() {
+        RefCountedLocalSolrQueryRequest request = new RefCountedLocalSolrQueryRequest(
+                fixture.core().getRegisteredSearcher(), new ModifiableSolrParams());
+        request.close();
+
+        request.retain();
+    }
+}
@@ -0,0 +1,290 @@
+package cool.solr.search.component.solr.util;
+
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.handler.component.SearchComponent;
+import org.apache.solr.handler.component.SearchHandler;
+import org.apache.solr.request.LocalSolrQueryRequest;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.response.ResultContext;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.RefCounted;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Small embedded Solr core for tests and benchmarks of local sub-requests. The solr home is copied from the
+ * classpath into a temporary directory, a single core is loaded and filled with deterministic,
+ * generated product-like documents with the fields id, title, description, category
+ * (<code>category-0</code> to <code>category-9</code>), brand and price (0 to 999).
+ * <p>
+ * Create once per test class and close it after the tests. The benchmarks module uses it through
+ * the test jar of this module.
+ */
+public class EmbeddedCoreFixture implements Closeable {
+    /**
+     * Name of the test core.
+     */
+    public static final String CORE_NAME = "collection1";
+
+    /**
+     * Name of the search handler whose components are used for origin requests.
+     */
+    public static final String HANDLER_NAME = "/select";
+
+    /**
+     * Words used to generate titles and descriptions.
+     */
+    static final String[] WORDS = {
+            "red", "green", "blue", "black", "white", "shirt", "dress", "shoe", "boot", "jacket",
+            "cotton", "leather", "wool", "summer", "winter", "classic", "slim", "regular", "long", "short",
+            "men", "women", "kids", "sport", "outdoor", "casual", "elegant", "vintage", "modern", "basic"
+    };
+
+    /**
+     * Files of the solr home, relative to the classpath root <code>solr-home</code>.
+     */
+    private static final String[] SOLR_HOME_FILES = {
+            "solr.xml",
+            CORE_NAME + "/core.properties",
+            CORE_NAME + "/conf/solrconfig.xml",
+            CORE_NAME + "/conf/schema.xml"
+    };
+
+    private final Path solrHome;
+    private final CoreContainer container;
+    private final SolrCore core;
+    private final int numDocs;
+    private final List<SolrQueryRequest> requests = new ArrayList<>();
+
+    /**
+     * Creates the fixture and indexes <code>numDocs</code> generated documents.
+     *
+     * @param numDocs Number of documents to index.
+     */
+    public EmbeddedCoreFixture(int numDocs) throws IOException {
+        solrHome = Files.createTempDirectory("solr-util-test");
+        for (String file : SOLR_HOME_FILES) {
+            Path target = solrHome.resolve(file);
+            Files.createDirectories(target.getParent());
+            try (InputStream in = checkNotNull(getClass().getResourceAsStream("/solr-home/" + file), file)) {
+                Files.copy(in, target);
+            }
+        }
+
+        container = CoreContainer.createAndLoad(solrHome);
+        core = container.getCore(CORE_NAME);
+        this.numDocs = numDocs;
+        index();
+    }
+
+    /**
+     * Returns the test core.
+     */
+    public SolrCore core() {
+        return core;
+    }
+
+    /**
+     * Creates an originating response builder for the given params with the components of the
+     * search handler, like the search handler would do for an incoming request.
+     *
+     * @see #origin(SolrParams, List)
+     */
+    public ResponseBuilder origin(SolrParams params) {
+        SearchHandler handler = (SearchHandler) core.getRequestHandler(HANDLER_NAME);
+        return origin(params, handler.getComponents());
+    }
+
+    /**
+     * Creates an originating response builder for the given params and components. The request
+     * is registered as the current request of the calling thread and is closed with the fixture,
+     * or by {@link #finish()}.
+     */
+    public ResponseBuilder origin(SolrParams params, List<SearchComponent> components) {
+        SolrQueryRequest request = new LocalSolrQueryRequest(core, params);
+        requests.add(request);
+
+        SolrQueryResponse response = new SolrQueryResponse();
+        SolrRequestInfo.setRequestInfo(new SolrRequestInfo(request, response));
+
+        return new ResponseBuilder(request, response, components);
+    }
+
+    /**
+     * Runs the prepare and process phases of all components of the origin, like the search
+     * handler does.
+     */
+    public ResponseBuilder prepare(ResponseBuilder origin) throws IOException {
+        for (SearchComponent component : origin.components) {
+            component.prepare(origin);
+        }
+        for (SearchComponent component : origin.components) {
+            component.process(origin);
+        }
+        return origin;
+    }
+
+    /**
+     * Finishes the origins created so far, like the end of their top level requests: the request
+     * info of the calling thread is cleared and the requests are closed.
+     */
+    public void finish() {
+        while (SolrRequestInfo.getRequestInfo() != null) {
+            SolrRequestInfo.clearRequestInfo();
+        }
+        for (SolrQueryRequest request : requests) {
+            request.close();
+        }
+        requests.clear();
+    }
+
+    /**
+     * Returns the number of documents found by the search handler for the given params.
+     */
+    public long numFound(SolrParams params) {
+        return search(params, response -> ((ResultContext) response.getResponse()).getDocList().matches());
+    }
+
+    /**
+     * Returns the <code>facet_counts</code> of the search handler for the given params.
+     */
+    @SuppressWarnings("unchecked")
+    public NamedList<Object> facetCounts(SolrParams params) {
+        return search(params, response -> (NamedList<Object>) response.getValues().get("facet_counts"));
+    }
+
+    /**
+     * Commits, which opens and registers a new searcher.
+     */
+    public void commit() throws IOException {
+        try {
+            new EmbeddedSolrServer(core).commit();
+        } catch (SolrServerException e) {
+            throw new IOException("Failed to commit", e);
+        }
+    }
+
+    /**
+     * Indexes the same documents again and commits, which opens and registers a new searcher
+     * on a new index reader with equal search results.
+     */
+    public void reindex() throws IOException {
+        index();
+    }
+
+    /**
+     * Returns the current reference count of the registered searcher, not counting this call.
+     */
+    public int registeredSearcherRefCount() {
+        RefCounted<SolrIndexSearcher> holder = core.getRegisteredSearcher();
+        try {
+            return holder.getRefcount() - 1;
+        } finally {
+            holder.decref();
+        }
+    }
+
+    /**
+     * Waits up to 10 seconds for the reference count of the registered searcher to reach the
+     * expected one, e.g. after sub-requests on other threads stopped.
+     *
+     * @return The last reference count, see {@link #registeredSearcherRefCount()}.
+     */
+    public int awaitRegisteredSearcherRefCount(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        int refCount = registeredSearcherRefCount();
+        while (refCount != expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            refCount = registeredSearcherRefCount();
+        }
+        return refCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        core.close();
+        container.shutdown();
+
+        try (Stream<Path> files = Files.walk(solrHome)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    //
+    // Helper
+    //
+
+    private <T> T search(SolrParams params, Function<SolrQueryResponse, T> result) {
+        ModifiableSolrParams search = new ModifiableSolrParams(params);
+        search.set("rows", 0);
+        try (SolrQueryRequest request = new LocalSolrQueryRequest(core, search)) {
+            SolrQueryResponse response = new SolrQueryResponse();
+            core.execute(core.getRequestHandler(HANDLER_NAME), request, response);
+            if (response.getException() != null) {
+                throw new IllegalStateException(response.getException());
+            }
+            return result.apply(response);
+        }
+    }
+
+    private void index() throws IOException {
+        Random random = new Random(42);
+        EmbeddedSolrServer server = new EmbeddedSolrServer(core);
+        try {
+            List<SolrInputDocument> batch = new ArrayList<>();
+            for (int i = 0; i < numDocs; i++) {
+                SolrInputDocument doc = new SolrInputDocument();
+                doc.addField("id", Integer.toString(i));
+                doc.addField("title", words(random, 4));
+                doc.addField("description", words(random, 12));
+                doc.addField("category", "category-" + random.nextInt(10));
+                doc.addField("brand", "brand-" + random.nextInt(50));
+                doc.addField("price", random.nextInt(1000));
+                batch.add(doc);
+            }
+            server.add(batch);
+            server.commit();
+        } catch (SolrServerException e) {
+            throw new IOException("Failed to index test documents", e);
+        }
+        // the server is not closed, as this would close the shared core container
+    }
+
+    /**
+     * Returns <code>count</code> random words of {@link #WORDS}, separated by spaces.
+     */
+    public static String words(Random random, int count) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                result.append(' ');
+            }
+            result.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return result.toString();
+    }
+}
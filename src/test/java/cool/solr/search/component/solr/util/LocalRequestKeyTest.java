@@ -0,0 +1,69 @@
+package cool.solr.search.component.solr.util;
+
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.handler.component.FacetComponent;
+import org.apache.solr.handler.component.QueryComponent;
+import org.apache.solr.handler.component.SearchComponent;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LocalRequestKeyTest {
+
+    private final SearchComponent query = new QueryComponent();
+    private final SearchComponent facet = new FacetComponent();
+
+    @Test
+    public void testEquals() {
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set("q", "boot");
+        params.add("fq", "a", "b");
+        ModifiableSolrParams reordered = new ModifiableSolrParams();
+        reordered.add("fq", "a", "b");
+        reordered.set("q", "boot");
+
+        LocalRequestKey key = new LocalRequestKey(Arrays.asList(query, facet), params);
+        LocalRequestKey other = new LocalRequestKey(Arrays.asList(query, facet), reordered);
+        assertEquals(key, other);
+        assertEquals(key.hashCode(), other.hashCode());
+    }
+
+    @Test
+    public void testEquals_differentParams() {
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.add("fq", "a", "b");
+        ModifiableSolrParams other = new ModifiableSolrParams();
+        other.add("fq", "b", "a");
+
+        List<SearchComponent> components = Collections.singletonList(query);
+        assertNotEquals(new LocalRequestKey(components, params), new LocalRequestKey(components, other));
+    }
+
+    @Test
+    public void testEquals_differentComponents() {
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set("q", "boot");
+
+        assertNotEquals(new LocalRequestKey(Collections.singletonList(query), params),
+                new LocalRequestKey(Collections.singletonList(new QueryComponent()), params));
+        assertNotEquals(new LocalRequestKey(Collections.singletonList(query), params),
+                new LocalRequestKey(Arrays.asList(query, facet), params));
+    }
+
+    @Test
+    public void testParamsAreCopied() {
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set("q", "boot");
+
+        LocalRequestKey key = new LocalRequestKey(Collections.singletonList(query), params);
+        LocalRequestKey copy = new LocalRequestKey(Collections.singletonList(query), params);
+        params.set("q", "shoe");
+
+        assertEquals(key, copy);
+        assertEquals("boot", key.getParams().get("q"));
+    }
+}
@@ -0,0 +1,83 @@
+package cool.solr.search.component.solr.util;
+
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.handler.component.QueryComponent;
+import org.apache.solr.handler.component.SearchComponent;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LocalRequestRecorderTest {
+
+    private final List<SearchComponent> components = Collections.singletonList(new QueryComponent());
+
+    @Test
+    public void testTop() {
+        LocalRequestRecorder recorder = new LocalRequestRecorder(10);
+        record(recorder, "a", 1);
+        record(recorder, "b", 3);
+        record(recorder, "c", 2);
+
+        assertEquals(Arrays.asList(key("b"), key("c")), recorder.top(2));
+        assertEquals(3, recorder.top(5).size());
+        assertEquals(3, recorder.size());
+    }
+
+    @Test
+    public void testDecay() {
+        LocalRequestRecorder recorder = new LocalRequestRecorder(2);
+        record(recorder, "a", 1);
+        record(recorder, "b", 4);
+
+        // full: c is not recorded until the next decay
+        record(recorder, "c", 3);
+        assertEquals(Arrays.asList(key("b"), key("a")), recorder.top(2));
+
+        // the 16th sample decays: a decays away, b is halved
+        record(recorder, "b", 7);
+        record(recorder, "c", 1);
+        assertEquals(Arrays.asList(key("b"), key("c")), recorder.top(2));
+        assertEquals(2, recorder.size());
+    }
+
+    @Test
+    public void testSampleRate() {
+        LocalRequestRecorder recorder = new LocalRequestRecorder(1000, 4);
+        for (int i = 0; i < 1000; i++) {
+            recorder.record(key(Integer.toString(i)));
+        }
+
+        // 250 on average
+        assertTrue(recorder.size() > 150);
+        assertTrue(recorder.size() < 350);
+    }
+
+    @Test
+    public void testClear() {
+        LocalRequestRecorder recorder = new LocalRequestRecorder(2);
+        record(recorder, "a", 1);
+        recorder.clear();
+
+        assertEquals(0, recorder.size());
+    }
+
+    //
+    // Helper
+    //
+
+    private void record(LocalRequestRecorder recorder, String q, int times) {
+        for (int i = 0; i < times; i++) {
+            recorder.record(key(q));
+        }
+    }
+
+    private LocalRequestKey key(String q) {
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set("q", q);
+        return new LocalRequestKey(components, params);
+    }
+}
@@ -0,0 +1,80 @@
+package cool.solr.search.component.solr.util;
+
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.handler.component.QueryComponent;
+import org.apache.solr.search.SolrCache;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.RefCounted;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class LocalRequestWarmingListenerTest {
+
+    private static EmbeddedCoreFixture fixture;
+    private static LocalRequestWarmingListener listener;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        fixture = new EmbeddedCoreFixture(100);
+
+        // like <str name="count">1</str> in the solrconfig.xml
+        NamedList<Object> args = new NamedList<>();
+        args.add("count", "1");
+        args.add("maxEntries", "2");
+        args.add("sampleRate", "1");
+        listener = new LocalRequestWarmingListener(fixture.core());
+        listener.init(args);
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws IOException {
+        fixture.close();
+    }
+
+    @Test
+    public void testInit_stringArgs() {
+        LocalRequestRecorder recorder = LocalRequestRecorder.get(fixture.core());
+        assertNotNull(recorder);
+        recorder.clear();
+        for (int i = 0; i < 5; i++) {
+            recorder.record(Collections.singletonList(new QueryComponent()), params("price:" + i));
+        }
+        assertTrue(recorder.size() <= 2);
+    }
+
+    @Test
+    public void testNewSearcher_replaysRecorded() {
+        LocalRequestRecorder recorder = LocalRequestRecorder.get(fixture.core());
+        recorder.clear();
+        recorder.record(Collections.singletonList(new QueryComponent()), params("price:[0 TO 77]"));
+
+        RefCounted<SolrIndexSearcher> holder = fixture.core().getRegisteredSearcher();
+        try {
+            SolrCache<?, ?> filterCache = holder.get().getFilterCache();
+            int size = filterCache.size();
+            listener.newSearcher(holder.get(), null);
+            assertEquals(size + 1, filterCache.size());
+        } finally {
+            holder.decref();
+        }
+    }
+
+    //
+    // Helper
+    //
+
+    private static ModifiableSolrParams params(String fq) {
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set("q", "*:*");
+        params.set("fq", fq);
+        params.set("rows", 0);
+        return params;
+    }
+}
@@ -0,0 +1,105 @@
+package cool.solr.search.component.solr.util;
+
+import cool.solr.search.component.solr.util.TestComponents.CountingComponent;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.handler.component.QueryComponent;
+import org.apache.solr.handler.component.SearchComponent;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LocalResponseRegeneratorTest {
+
+    private static final String CACHE_NAME = "localRequestCache";
+
+    private static EmbeddedCoreFixture fixture;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        fixture = new EmbeddedCoreFixture(100);
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws IOException {
+        fixture.close();
+    }
+
+    @After
+    public void tearDown() {
+        fixture.finish();
+    }
+
+    @Test
+    public void testRegenerateItem_newSearcher() throws Exception {
+        CountingComponent counting = new CountingComponent();
+        List<SearchComponent> components = Arrays.asList(new QueryComponent(), counting);
+
+        LocalResponse cached = executeCached(components);
+        assertEquals(1, counting.processed.get());
+
+        EmbeddedSolrServer server = new EmbeddedSolrServer(fixture.core());
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.addField("id", "red");
+        doc.addField("title", "red");
+        server.add(doc);
+        try {
+            // the new searcher is autowarmed by replaying the cached sub-request
+            server.commit();
+            assertEquals(2, counting.processed.get());
+
+            LocalResponse regenerated = executeCached(components);
+            assertEquals(2, counting.processed.get());
+            assertNotSame(cached, regenerated);
+            assertEquals(cached.getNumFound() + 1, regenerated.getNumFound());
+            assertEquals(fixture.numFound(params()), regenerated.getNumFound());
+        } finally {
+            server.deleteById("red");
+            server.commit();
+        }
+    }
+
+    @Test
+    public void testRegenerateItem_reindex() throws IOException {
+        CountingComponent counting = new CountingComponent();
+        List<SearchComponent> components = Arrays.asList(new QueryComponent(), counting);
+
+        LocalResponse cached = executeCached(components);
+        assertEquals(1, counting.processed.get());
+
+        fixture.reindex();
+        assertEquals(2, counting.processed.get());
+
+        // served from the autowarmed cache of the new searcher
+        LocalResponse regenerated = executeCached(components);
+        assertEquals(2, counting.processed.get());
+        assertNotSame(cached, regenerated);
+        assertEquals(cached.getNumFound(), regenerated.getNumFound());
+    }
+
+    //
+    // Helper
+    //
+
+    private static LocalResponse executeCached(List<SearchComponent> components) throws IOException {
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(fixture.origin(params(), components))) {
+            return builder.useUnscoredSolrParams().useComponent(CountingComponent.class).executeCached(CACHE_NAME);
+        } finally {
+            fixture.finish();
+        }
+    }
+
+    private static ModifiableSolrParams params() {
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set("q", "title:red");
+        return params;
+    }
+}
@@ -0,0 +1,83 @@
+package cool.solr.search.component.solr.util;
+
+import org.apache.solr.handler.component.FacetComponent;
+import org.apache.solr.handler.component.QueryComponent;
+import org.apache.solr.handler.component.RealTimeGetComponent;
+import org.apache.solr.handler.component.SearchComponent;
+import org.apache.solr.handler.component.StatsComponent;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SearchComponentResolverTest {
+
+    @Test
+    public void testGetByClass() {
+        QueryComponent query = new QueryComponent();
+        FacetComponent facet = new FacetComponent();
+        SearchComponentResolver resolver = SearchComponentResolver.of(Arrays.asList(query, facet));
+
+        assertSame(query, resolver.get(QueryComponent.class));
+        assertSame(facet, resolver.get(FacetComponent.class));
+        assertSame(query, resolver.get(SearchComponent.class));
+        assertNull(resolver.get(StatsComponent.class));
+        assertNull(resolver.get(StatsComponent.class));
+    }
+
+    @Test
+    public void testGetByClass_subclass() {
+        QueryComponent query = new QueryComponent() {
+        };
+        SearchComponentResolver resolver = SearchComponentResolver.of(Arrays.asList(new RealTimeGetComponent(), query));
+
+        assertSame(query, resolver.get(QueryComponent.class));
+    }
+
+    @Test
+    public void testGetByName() {
+        QueryComponent query = new QueryComponent();
+        query.setName("query");
+        StatsComponent stats = new StatsComponent();
+        stats.setName("stats");
+        SearchComponentResolver resolver = SearchComponentResolver.of(Arrays.asList(query, stats, new FacetComponent()));
+
+        assertSame(query, resolver.get("query"));
+        assertSame(stats, resolver.get("stats"));
+        assertNull(resolver.get("facet"));
+    }
+
+    @Test
+    public void testOf_cachedByIdentity() {
+        List<SearchComponent> components = new ArrayList<>(Arrays.asList(new QueryComponent(), new FacetComponent()));
+        List<SearchComponent> equalComponents = new ArrayList<>(components);
+
+        assertSame(SearchComponentResolver.of(components), SearchComponentResolver.of(components));
+        assertNotSame(SearchComponentResolver.of(components), SearchComponentResolver.of(equalComponents));
+    }
+
+    @Test
+    public void testOf_evictsCollectedLists() throws InterruptedException {
+        long size = SearchComponentResolver.size();
+        List<List<SearchComponent>> lists = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            List<SearchComponent> components = Arrays.asList(new QueryComponent(), new FacetComponent());
+            SearchComponentResolver.of(components);
+            lists.add(components);
+        }
+        assertTrue(SearchComponentResolver.size() >= size + 1000);
+
+        // like the lists of the handlers of a reloaded core
+        lists = null;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (SearchComponentResolver.size() > size && System.nanoTime() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertTrue(SearchComponentResolver.size() <= size);
+    }
+}
@@ -0,0 +1,72 @@
+package cool.solr.search.component.solr.util;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.RefCounted;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class SearcherReferenceTest {
+
+    private static EmbeddedCoreFixture fixture;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        fixture = new EmbeddedCoreFixture(10);
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws IOException {
+        fixture.close();
+    }
+
+    @Test
+    public void testAcquire_registered() {
+        RefCounted<SolrIndexSearcher> registered = fixture.core().getRegisteredSearcher();
+        try {
+            int refCount = fixture.registeredSearcherRefCount();
+
+            SearcherReference reference = SearcherReference.acquire(registered.get());
+            assertEquals(refCount + 1, fixture.registeredSearcherRefCount());
+
+            reference.release();
+            reference.release();
+            assertEquals(refCount, fixture.registeredSearcherRefCount());
+        } finally {
+            registered.decref();
+        }
+    }
+
+    @Test
+    public void testIncref_notRegistered() throws IOException {
+        // neither registered nor the newest searcher, e.g. opened by a custom component
+        SolrCore core = fixture.core();
+        SolrIndexSearcher searcher = new SolrIndexSearcher(core, core.getNewIndexDir(), core.getLatestSchema(),
+                core.getSolrConfig().indexConfig, "test", true, core.getDirectoryFactory());
+        DirectoryReader reader = searcher.getRawReader();
+        searcher.getDocSet(new TermQuery(new Term("id", "1")));
+        assertEquals(1, searcher.getFilterCache().size());
+
+        RefCounted<SolrIndexSearcher> holder = SearcherReference.incref(searcher);
+        assertSame(searcher, holder.get());
+
+        // only the raw reader stays open after the searcher closed, not its caches
+        searcher.close();
+        assertEquals(1, reader.getRefCount());
+        assertNotNull(holder.get().getRawReader().document(0));
+        assertEquals(10, holder.get().search(new MatchAllDocsQuery(), 1).totalHits.value);
+        assertEquals(0, searcher.getFilterCache().size());
+
+        holder.decref();
+        assertEquals(0, reader.getRefCount());
+    }
+}
@@ -0,0 +1,185 @@
+package cool.solr.search.component.solr.util;
+
+import com.codahale.metrics.Timer;
+import cool.solr.search.component.solr.util.TestComponents.BlockingComponent;
+import cool.solr.search.component.solr.util.TestComponents.RequestInfoComponent;
+import cool.solr.search.component.solr.util.TestComponents.SlowComponent;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.core.SolrInfoBean;
+import org.apache.solr.handler.component.QueryComponent;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.handler.component.SearchComponent;
+import org.apache.solr.metrics.SolrMetricManager;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SolrLocalRequestExecutorTest {
+
+    private static EmbeddedCoreFixture fixture;
+    private static SolrLocalRequestExecutor executor;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        fixture = new EmbeddedCoreFixture(200);
+        executor = new SolrLocalRequestExecutor(2);
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws IOException {
+        executor.close();
+        fixture.close();
+    }
+
+    @After
+    public void tearDown() {
+        fixture.finish();
+    }
+
+    @Test
+    public void testExecuteAll() throws IOException {
+        ResponseBuilder origin = fixture.origin(params("title:red"));
+        try (SolrLocalResponseBuilder red = new SolrLocalResponseBuilder(origin);
+             SolrLocalResponseBuilder blue = new SolrLocalResponseBuilder(origin)) {
+            List<ResponseBuilder> responses = executor.executeAll(Arrays.asList(
+                    red.useUnscoredSolrParams().build(),
+                    blue.useParams(params("title:blue")).build()), 10, TimeUnit.SECONDS);
+
+            assertEquals(fixture.numFound(params("title:red")), responses.get(0).getResults().docList.matches());
+            assertEquals(fixture.numFound(params("title:blue")), responses.get(1).getResults().docList.matches());
+        }
+    }
+
+    @Test
+    public void testExecuteAll_measuresLabeled() throws IOException {
+        ResponseBuilder origin = fixture.origin(params("title:red"));
+        try (SolrLocalResponseBuilder first = new SolrLocalResponseBuilder(origin).label("executor");
+             SolrLocalResponseBuilder second = new SolrLocalResponseBuilder(origin).label("executor")) {
+            Timer requestTimes = requestTimes("executor");
+            long count = requestTimes.getCount();
+
+            List<ResponseBuilder> responses = executor.executeAll(Arrays.asList(
+                    first.useUnscoredSolrParams().build(),
+                    second.useUnscoredSolrParams().build()), 10, TimeUnit.SECONDS);
+
+            assertSame(LocalRequestMetrics.of(responses.get(0)), LocalRequestMetrics.of(responses.get(1)));
+            assertEquals(count + 2, requestTimes.getCount());
+        }
+    }
+
+    @Test
+    public void testExecuteAll_ownRequestInfo() throws IOException {
+        RequestInfoComponent component = new RequestInfoComponent();
+        ResponseBuilder origin = fixture.origin(params("title:red"), components(component));
+        SolrRequestInfo originInfo = SolrRequestInfo.getRequestInfo();
+        AtomicInteger originHooks = new AtomicInteger();
+        originInfo.addCloseHook(originHooks::incrementAndGet);
+
+        try (SolrLocalResponseBuilder first = new SolrLocalResponseBuilder(origin);
+             SolrLocalResponseBuilder second = new SolrLocalResponseBuilder(origin);
+             SolrLocalResponseBuilder third = new SolrLocalResponseBuilder(origin)) {
+            List<ResponseBuilder> responses = Arrays.asList(
+                    first.useUnscoredSolrParams().useComponent(RequestInfoComponent.class).build(),
+                    second.useUnscoredSolrParams().useComponent(RequestInfoComponent.class).build(),
+                    third.useUnscoredSolrParams().useComponent(RequestInfoComponent.class).build());
+            executor.executeAll(responses, 10, TimeUnit.SECONDS);
+
+            // each sub-request saw its own request info, whose close hooks ran at its end
+            List<SolrQueryRequest> requests = new ArrayList<>();
+            for (ResponseBuilder response : responses) {
+                requests.add(response.req);
+            }
+            assertEquals(3, component.requests.size());
+            assertTrue(component.requests.containsAll(requests));
+            assertEquals(3, component.closedHooks.get());
+        }
+
+        // the request info of the origin is untouched
+        assertSame(originInfo, SolrRequestInfo.getRequestInfo());
+        assertEquals(0, originHooks.get());
+    }
+
+    @Test
+    public void testExecuteAll_timedOutHoldsSearcher() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingComponent component = new BlockingComponent(blocked, release);
+        ResponseBuilder origin = fixture.origin(params("title:red"), components(component));
+        // the origin references the searcher on first use
+        origin.req.getSearcher();
+        int refCount = fixture.registeredSearcherRefCount();
+
+        try (SolrLocalResponseBuilder slow = new SolrLocalResponseBuilder(origin);
+             SolrLocalResponseBuilder fast = new SolrLocalResponseBuilder(origin)) {
+            List<ResponseBuilder> responses = executor.executeAll(Arrays.asList(
+                    slow.useUnscoredSolrParams().useComponent(BlockingComponent.class).build(),
+                    fast.useUnscoredSolrParams().build()), 200, TimeUnit.MILLISECONDS);
+            assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+            assertNull(responses.get(0));
+            assertNotNull(responses.get(1));
+            assertEquals(refCount + 1, fixture.registeredSearcherRefCount());
+        } finally {
+            release.countDown();
+        }
+
+        assertEquals(refCount, fixture.awaitRegisteredSearcherRefCount(refCount));
+    }
+
+    @Test
+    public void testExecuteAll_timedOutOnCallingThread() throws IOException {
+        SlowComponent component = new SlowComponent(300);
+        ResponseBuilder origin = fixture.origin(params("title:red"), components(component));
+
+        try (SolrLocalResponseBuilder fast = new SolrLocalResponseBuilder(origin);
+             SolrLocalResponseBuilder slow = new SolrLocalResponseBuilder(origin)) {
+            // the last one runs on the calling thread
+            List<ResponseBuilder> responses = executor.executeAll(Arrays.asList(
+                    fast.useUnscoredSolrParams().build(),
+                    slow.useUnscoredSolrParams().useComponent(SlowComponent.class).build()), 100, TimeUnit.MILLISECONDS);
+
+            assertNotNull(responses.get(0));
+            assertNull(responses.get(1));
+            assertEquals(0, component.processed.get());
+        }
+    }
+
+    //
+    // Helper
+    //
+
+    static ModifiableSolrParams params(String q) {
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set("q", q);
+        return params;
+    }
+
+    private static Timer requestTimes(String label) {
+        SolrCore core = fixture.core();
+        String name = SolrMetricManager.mkName("requestTimes", SolrInfoBean.Category.QUERY.toString(),
+                LocalRequestMetrics.SCOPE, label);
+        return core.getCoreContainer().getMetricManager()
+                .registry(core.getCoreMetricManager().getRegistryName()).timer(name);
+    }
+
+    private static List<SearchComponent> components(SearchComponent component) {
+        List<SearchComponent> components = new ArrayList<>();
+        components.add(new QueryComponent());
+        components.add(component);
+        return components;
+    }
+}
@@ -0,0 +1,537 @@
+package cool.solr.search.component.solr.util;
+
+import cool.solr.search.component.solr.util.TestComponents.BlockingComponent;
+import cool.solr.search.component.solr.util.TestComponents.CountingComponent;
+import cool.solr.search.component.solr.util.TestComponents.PartialResultsComponent;
+import cool.solr.search.component.solr.util.TestComponents.RequestInfoComponent;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.Utils;
+import org.apache.solr.handler.component.FacetComponent;
+import org.apache.solr.handler.component.QueryComponent;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.handler.component.SearchComponent;
+import org.apache.solr.handler.component.StatsComponent;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.SolrCache;
+import org.apache.solr.search.facet.FacetModule;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SolrLocalResponseBuilderTest {
+
+    private static final String JSON_FACET = "{categories:{type:terms,field:category}}";
+
+    /**
+     * Name of the sub-request cache in the solrconfig.xml of the test core.
+     */
+    private static final String CACHE_NAME = "localRequestCache";
+
+    private static EmbeddedCoreFixture fixture;
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        fixture = new EmbeddedCoreFixture(500);
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws IOException {
+        executor.shutdownNow();
+        fixture.close();
+    }
+
+    @After
+    public void tearDown() {
+        fixture.finish();
+    }
+
+    @Test
+    public void testGetDocSetAndHitCount() throws IOException {
+        ModifiableSolrParams params = params("title:red", "price:[0 TO 499]");
+        long expected = fixture.numFound(params);
+        assertTrue(expected > 0);
+
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(fixture.origin(params))) {
+            builder.useUnscoredSolrParams();
+
+            DocSet docs = builder.getDocSet();
+            assertEquals(expected, docs.size());
+            assertEquals(expected, builder.getHitCount());
+            assertFalse(builder.isPartialResults());
+        }
+    }
+
+    @Test
+    public void testGetDocSetAndHitCount_matchAll() throws IOException {
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(fixture.origin(params("*:*")))) {
+            builder.useUnscoredSolrParams();
+            assertEquals(500, builder.getHitCount());
+            assertEquals(500, builder.getDocSet().size());
+
+            builder.useParams(params("*:*", "category:category-1"));
+            assertEquals(fixture.numFound(params("*:*", "category:category-1")), builder.getHitCount());
+        }
+    }
+
+    @Test
+    public void testGetDocSetAndHitCount_cachesFiltersOnly() throws IOException {
+        ResponseBuilder origin = fixture.origin(params("title:green", "price:[0 TO 321]"));
+        SolrCache<?, ?> filterCache = origin.req.getSearcher().getFilterCache();
+        int size = filterCache.size();
+
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(origin)) {
+            builder.useUnscoredSolrParams();
+            builder.getHitCount();
+            builder.getDocSet();
+        }
+
+        // the fq, but not q
+        assertEquals(size + 1, filterCache.size());
+    }
+
+    @Test
+    public void testGetHitCount_maxHits() throws IOException {
+        ModifiableSolrParams params = params("title:red");
+        assertTrue(fixture.numFound(params) > 10);
+
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(fixture.origin(params))) {
+            builder.useUnscoredSolrParams().maxHits(10);
+
+            assertEquals(10, builder.getHitCount());
+            assertTrue(builder.isPartialResults());
+            assertEquals(10, builder.getDocSet().size());
+            assertTrue(builder.isPartialResults());
+        }
+    }
+
+    @Test
+    public void testBuild_maxHits() {
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(fixture.origin(params("title:red")))) {
+            builder.maxHits(10);
+
+            // sorted by score
+            assertEquals("10", builder.useParams(params("title:red")).build().req.getParams().get("minExactCount"));
+            // not terminated early by Solr
+            assertNull(builder.useUnscoredSolrParams().build().req.getParams().get("minExactCount"));
+        }
+    }
+
+    @Test
+    public void testUseOriginQuery() throws IOException {
+        ResponseBuilder origin = fixture.prepare(fixture.origin(originParams("title")));
+        DocSet originDocs = origin.getResults().docSet;
+        assertNotNull(originDocs);
+
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(origin)) {
+            builder.useOriginQuery().useParams(originParams("title"));
+            assertSame(originDocs, builder.getDocSet());
+
+            ModifiableSolrParams params = originParams("title");
+            params.add("fq", "category:category-1");
+            builder.useParams(params);
+            assertEquals(fixture.numFound(params), builder.getDocSet().size());
+            assertEquals(fixture.numFound(params), builder.getHitCount());
+        }
+    }
+
+    @Test
+    public void testUseOriginQuery_unscored() throws IOException {
+        ModifiableSolrParams originParams = originParams("title description");
+        originParams.set("pf", "title");
+        originParams.set("bf", "price");
+        ResponseBuilder origin = fixture.prepare(fixture.origin(originParams));
+        DocSet originDocs = origin.getResults().docSet;
+        assertNotNull(originDocs);
+
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(origin)) {
+            // without pf and bf, which only affect the score
+            builder.useOriginQuery().useUnscoredSolrParams();
+            assertSame(originDocs, builder.getDocSet());
+
+            ModifiableSolrParams params = SolrLocalResponseBuilder.computeUnscoredSolrParams(originParams);
+            params.add("fq", "category:category-1");
+            builder.useParams(params);
+            assertEquals(fixture.numFound(params), builder.getDocSet().size());
+            assertEquals(fixture.numFound(params), builder.getHitCount());
+        }
+    }
+
+    @Test
+    public void testUseOriginQuery_paramMismatch() throws IOException {
+        ResponseBuilder origin = fixture.prepare(fixture.origin(originParams("title")));
+
+        // same q and defType, but other fields
+        ModifiableSolrParams params = originParams("description");
+        long expected = fixture.numFound(params);
+        assertNotEquals(fixture.numFound(originParams("title")), expected);
+
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(origin)) {
+            builder.useOriginQuery().useParams(params);
+            assertEquals(expected, builder.getDocSet().size());
+            assertEquals(expected, builder.getHitCount());
+        }
+    }
+
+    @Test
+    public void testUseOriginQuery_modifiedByComponent() throws IOException {
+        ResponseBuilder origin = fixture.prepare(fixture.origin(originParams("title")));
+        DocSet originDocs = origin.getResults().docSet;
+        // like elevation, after the origin computed its documents
+        origin.setQuery(new BooleanQuery.Builder()
+                .add(origin.getQuery(), BooleanClause.Occur.SHOULD)
+                .add(new TermQuery(new Term("id", "1")), BooleanClause.Occur.SHOULD)
+                .build());
+
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(origin)) {
+            builder.useOriginQuery().useParams(originParams("title"));
+            assertNotSame(originDocs, builder.getDocSet());
+            assertEquals(fixture.numFound(originParams("title")), builder.getHitCount());
+        }
+    }
+
+    @Test
+    public void testComputeFacetCounts() throws IOException {
+        ModifiableSolrParams params = facetParams("category:category-1");
+        NamedList<Object> expected = fixture.facetCounts(params);
+
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(fixture.origin(params))) {
+            // facet=false of the unscored params is ignored
+            builder.useUnscoredSolrParams();
+            NamedList<Object> facetCounts = builder.computeFacetCounts();
+
+            assertEquals(expected.get("facet_fields"), facetCounts.get("facet_fields"));
+            assertEquals(expected.get("facet_queries"), facetCounts.get("facet_queries"));
+            assertEquals(expected.get("facet_ranges"), facetCounts.get("facet_ranges"));
+        }
+    }
+
+    @Test
+    public void testComputeFacetCounts_tagExclusion() throws IOException {
+        ModifiableSolrParams params = facetParams("{!tag=cat}category:category-1");
+        params.set("facet.field", "{!ex=cat}category");
+        NamedList<Object> expected = fixture.facetCounts(params);
+
+        ResponseBuilder origin = fixture.prepare(fixture.origin(params));
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(origin)) {
+            builder.useOriginQuery().useParams(params);
+            NamedList<Object> facetCounts = builder.computeFacetCounts(origin.getResults().docSet);
+
+            // counts of all categories, not only of the filtered one
+            assertEquals(expected.get("facet_fields"), facetCounts.get("facet_fields"));
+            assertTrue(((NamedList<?>) ((NamedList<?>) facetCounts.get("facet_fields")).get("category")).size() > 1);
+        }
+    }
+
+    @Test
+    public void testUseJsonFacetModule_fromCore() throws IOException {
+        ModifiableSolrParams params = params("title:red");
+        params.set("json.facet", JSON_FACET);
+        SearchComponent facetModule = fixture.core().getSearchComponent(FacetModule.COMPONENT_NAME);
+
+        // origin without facet module
+        ResponseBuilder origin = fixture.origin(params, Collections.singletonList(new QueryComponent()));
+        try (SolrLocalResponseBuilder first = new SolrLocalResponseBuilder(origin);
+             SolrLocalResponseBuilder second = new SolrLocalResponseBuilder(origin)) {
+            ResponseBuilder response = first.useUnscoredSolrParams().useJsonFacetModule().build();
+            assertSame(facetModule, response.components.get(1));
+            assertSame(facetModule, second.useUnscoredSolrParams().useJsonFacetModule().build().components.get(1));
+
+            SolrLocalResponseBuilder.execute(response);
+            assertNotNull(response.rsp.getValues().get("facets"));
+        }
+    }
+
+    @Test
+    public void testUseJsonFacetModule_respectsRules() throws IOException {
+        ModifiableSolrParams params = params("title:red");
+        params.set("json.facet", JSON_FACET);
+        SolrParamsRewriteRules rules = SolrLocalResponseBuilder.UNSCORED_RULES.toBuilder().remove("json.facet").build();
+
+        // parsed into the JSON of the origin, like by the search handler
+        ResponseBuilder origin = fixture.origin(params);
+        origin.req.setJSON(Collections.singletonMap("facet", Utils.fromJSONString(JSON_FACET)));
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(origin)) {
+            ResponseBuilder response = builder.useUnscoredSolrParams(rules).useJsonFacetModule().build();
+            assertNull(response.req.getParams().get("json.facet"));
+
+            SolrLocalResponseBuilder.execute(response);
+            assertNull(response.rsp.getValues().get("facets"));
+        }
+
+        // of a JSON request body
+        origin = fixture.origin(params("title:red"));
+        origin.req.setJSON(Collections.singletonMap("facet", Utils.fromJSONString(JSON_FACET)));
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(origin)) {
+            ResponseBuilder response = builder.useUnscoredSolrParams(rules).useJsonFacetModule().build();
+            assertNotNull(response.req.getParams().get("json.facet"));
+
+            SolrLocalResponseBuilder.execute(response);
+            assertNotNull(response.rsp.getValues().get("facets"));
+        }
+    }
+
+    @Test
+    public void testUseComponent() {
+        ResponseBuilder origin = fixture.origin(params("title:red"), Collections.singletonList(new QueryComponent()));
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(origin)) {
+            // not in the origin, but registered in the core
+            builder.useFacetComponent().useComponent("stats");
+
+            List<SearchComponent> components = builder.useUnscoredSolrParams().build().components;
+            assertSame(fixture.core().getSearchComponent(FacetComponent.COMPONENT_NAME), components.get(1));
+            assertSame(fixture.core().getSearchComponent("stats"), components.get(2));
+        }
+    }
+
+    @Test
+    public void testUseComponent_missingClass() {
+        ResponseBuilder origin = fixture.origin(params("title:red"), Collections.singletonList(new QueryComponent()));
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(origin)) {
+            builder.useComponent(StatsComponent.class);
+            fail();
+        } catch (SolrException e) {
+            assertTrue(e.getMessage().contains(StatsComponent.class.getName()));
+        }
+    }
+
+    @Test(expected = SolrException.class)
+    public void testUseComponent_missingName() {
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(fixture.origin(params("title:red")))) {
+            builder.useComponent("missing");
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testUseComponent_nullClass() {
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(fixture.origin(params("title:red")))) {
+            builder.useComponent((Class<? extends SearchComponent>) null);
+        }
+    }
+
+    @Test
+    public void testExecuteAsync_ownRequestInfo() throws Exception {
+        RequestInfoComponent component = new RequestInfoComponent();
+        ResponseBuilder origin = fixture.origin(params("title:red"), components(component));
+        SolrRequestInfo originInfo = SolrRequestInfo.getRequestInfo();
+        AtomicInteger originHooks = new AtomicInteger();
+        originInfo.addCloseHook(originHooks::incrementAndGet);
+
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(origin)) {
+            ResponseBuilder response = builder.useUnscoredSolrParams().useComponent(RequestInfoComponent.class).build();
+            assertSame(response, SolrLocalResponseBuilder.executeAsync(response, executor).get(10, TimeUnit.SECONDS));
+
+            assertEquals(fixture.numFound(params("title:red")), response.getResults().docList.matches());
+            assertSame(response.req, component.requests.peek());
+            assertEquals(1, component.closedHooks.get());
+        }
+
+        assertSame(originInfo, SolrRequestInfo.getRequestInfo());
+        assertEquals(0, originHooks.get());
+    }
+
+    @Test
+    public void testExecuteAsync_cancelledHoldsSearcher() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ResponseBuilder origin = fixture.origin(params("title:red"), components(new BlockingComponent(blocked, release)));
+        origin.req.getSearcher();
+        int refCount = fixture.registeredSearcherRefCount();
+
+        CompletableFuture<ResponseBuilder> future;
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(origin)) {
+            ResponseBuilder response = builder.useUnscoredSolrParams().useComponent(BlockingComponent.class).build();
+            future = SolrLocalResponseBuilder.executeAsync(response, executor);
+            assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+            assertTrue(future.cancel(false));
+            assertEquals(refCount + 1, fixture.registeredSearcherRefCount());
+        } finally {
+            release.countDown();
+        }
+
+        assertEquals(refCount, fixture.awaitRegisteredSearcherRefCount(refCount));
+        assertTrue(future.isCancelled());
+    }
+
+    @Test
+    public void testExecuteAsync_heldRequestClosedOnCancel() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ResponseBuilder origin = fixture.origin(params("title:red"), components(new BlockingComponent(blocked, release)));
+        origin.req.getSearcher();
+        int refCount = fixture.registeredSearcherRefCount();
+
+        ResponseBuilder response;
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(origin)) {
+            response = builder.useUnscoredSolrParams().useComponent(BlockingComponent.class).holdSearcher().build();
+        }
+        try {
+            CompletableFuture<ResponseBuilder> future = SolrLocalResponseBuilder.executeAsync(response, executor);
+            future.whenComplete((r, e) -> response.req.close());
+            assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+            // closed by the caller, but retained by the running execution
+            assertTrue(future.cancel(false));
+            assertNotNull(response.req.getSearcher());
+            assertEquals(refCount + 1, fixture.registeredSearcherRefCount());
+        } finally {
+            release.countDown();
+        }
+
+        assertEquals(refCount, fixture.awaitRegisteredSearcherRefCount(refCount));
+        assertNull(response.req.getSearcher());
+    }
+
+    @Test
+    public void testHoldSearcher_outlivesOrigin() throws IOException {
+        ResponseBuilder response;
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(fixture.origin(params("title:red")))) {
+            response = builder.useUnscoredSolrParams().holdSearcher().build();
+        }
+        DirectoryReader reader = response.req.getSearcher().getRawReader();
+
+        try {
+            // the origin completes and a new searcher is registered
+            fixture.finish();
+            fixture.reindex();
+            assertTrue(reader.getRefCount() > 0);
+
+            SolrLocalResponseBuilder.execute(response);
+            assertEquals(fixture.numFound(params("title:red")), response.getResults().docList.matches());
+        } finally {
+            response.req.close();
+        }
+
+        assertEquals(0, reader.getRefCount());
+    }
+
+    @Test
+    public void testExecuteCached_hitAndMiss() throws IOException {
+        CountingComponent counting = new CountingComponent();
+        List<SearchComponent> components = components(counting);
+
+        LocalResponse red = executeCached(params("title:red"), components);
+        assertEquals(1, counting.processed.get());
+        assertEquals(fixture.numFound(params("title:red")), red.getNumFound());
+
+        // same components and params
+        assertSame(red, executeCached(params("title:red"), components));
+        assertEquals(1, counting.processed.get());
+
+        LocalResponse blue = executeCached(params("title:blue"), components);
+        assertEquals(2, counting.processed.get());
+        assertEquals(fixture.numFound(params("title:blue")), blue.getNumFound());
+    }
+
+    @Test
+    public void testExecuteCached_partialResultsNotCached() throws IOException {
+        PartialResultsComponent partial = new PartialResultsComponent();
+        List<SearchComponent> components = components(partial);
+
+        executeCached(params("title:red"), components);
+        executeCached(params("title:red"), components);
+        assertEquals(2, partial.processed.get());
+    }
+
+    @Test
+    public void testBuild_reuseRequest() throws IOException {
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(fixture.origin(params("title:red")))) {
+            builder.reuseRequest();
+
+            ResponseBuilder red = builder.useUnscoredSolrParams().build();
+            assertEquals("title:red", red.req.getOriginalParams().get("q"));
+
+            ResponseBuilder blue = builder.useParams(params("title:blue")).build();
+            assertSame(red.req, blue.req);
+            assertEquals("title:blue", blue.req.getParams().get("q"));
+            assertEquals("title:blue", blue.req.getOriginalParams().get("q"));
+
+            SolrLocalResponseBuilder.execute(blue);
+            assertEquals(fixture.numFound(params("title:blue")), blue.getResults().docList.matches());
+        }
+    }
+
+    //
+    // Helper
+    //
+
+    /**
+     * Executes an unscored sub-request of a new origin with the given components, the last one
+     * used in addition to the query component, through the cache and finishes the origin.
+     */
+    private static LocalResponse executeCached(ModifiableSolrParams params, List<SearchComponent> components) throws IOException {
+        try (SolrLocalResponseBuilder builder = new SolrLocalResponseBuilder(fixture.origin(params, components))) {
+            return builder.useUnscoredSolrParams()
+                    .useComponent(components.get(components.size() - 1).getClass())
+                    .executeCached(CACHE_NAME);
+        } finally {
+            fixture.finish();
+        }
+    }
+
+    private static List<SearchComponent> components(SearchComponent component) {
+        List<SearchComponent> components = new ArrayList<>();
+        components.add(new QueryComponent());
+        components.add(component);
+        return components;
+    }
+
+    private static ModifiableSolrParams facetParams(String fq) {
+        ModifiableSolrParams params = params("title:red", fq);
+        params.set("facet", true);
+        params.set("facet.field", "category");
+        params.set("facet.mincount", 1);
+        params.set("facet.query", "price:[0 TO 99]");
+        params.set("facet.range", "price");
+        params.set("facet.range.start", 0);
+        params.set("facet.range.end", 1000);
+        params.set("facet.range.gap", 250);
+        return params;
+    }
+
+    /**
+     * Params of an origin searching red in the given fields and faceting, so the query component
+     * computes the matching documents.
+     */
+    private static ModifiableSolrParams originParams(String qf) {
+        ModifiableSolrParams params = params("red", "price:[0 TO 499]");
+        params.set("defType", "edismax");
+        params.set("qf", qf);
+        params.set("facet", true);
+        params.set("facet.field", "category");
+        return params;
+    }
+
+    static ModifiableSolrParams params(String q, String... fqs) {
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set("q", q);
+        for (String fq : fqs) {
+            params.add("fq", fq);
+        }
+        return params;
+    }
+}
@@ -0,0 +1,307 @@
+package cool.solr.search.component.solr.util;
+
+import com.google.common.collect.Sets;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.DisMaxParams;
+import org.apache.solr.common.params.FacetParams;
+import org.apache.solr.common.params.GroupParams;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.params.MultiMapSolrParams;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class SolrParamsRewriteRulesTest {
+
+    @Test
+    public void testApply() {
+        SolrParamsRewriteRules rules = SolrParamsRewriteRules.builder()
+                .remove("a")
+                .removePrefix("p.")
+                .set("b", "1", "2")
+                .build();
+
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set("a", "x");
+        params.set("b", "x");
+        params.set("c", "x");
+        params.set("p.a", "x");
+        params.set("p", "x");
+
+        ModifiableSolrParams result = rules.apply(params);
+        assertEquals(map("b", "1,2", "c", "x", "p", "x"), toMap(result));
+
+        // input is not modified
+        assertEquals(5, params.toNamedList().size());
+    }
+
+    @Test
+    public void testApply_order() {
+        SolrParamsRewriteRules rules = SolrParamsRewriteRules.builder()
+                .set("a", "1")
+                .remove("a")
+                .remove("b")
+                .set("b", "1")
+                .set("p.a", "1")
+                .removePrefix("p.")
+                .set("p.b", "1")
+                .build();
+
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set("a", "x");
+        params.set("b", "x");
+        params.set("p.c", "x");
+
+        assertEquals(map("b", "1", "p.b", "1"), toMap(rules.apply(params)));
+    }
+
+    @Test
+    public void testApply_resultIsIndependent() {
+        SolrParamsRewriteRules rules = SolrParamsRewriteRules.builder().set("a", "1").build();
+
+        rules.apply(new ModifiableSolrParams()).getParams("a")[0] = "modified";
+        assertEquals("1", rules.apply(new ModifiableSolrParams()).get("a"));
+    }
+
+    @Test
+    public void testComputeUnscoredSolrParams() {
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set("q", "red leather boot");
+        params.set("defType", "edismax");
+        params.set("qf", "title^3 description");
+        params.set("pf", "title^10");
+        params.set("ps", "2");
+        params.set("mm", "100%");
+        params.set("bq", "brand:brand-1^2");
+        params.set("boost", "if(exists(price),1,0.5)");
+        params.set("boost.cache", "true");
+        params.set("bmax.term", "x");
+        params.set("rows", "48");
+        params.set("start", "96");
+        params.set("sort", "score desc, id asc");
+        params.add("fq", "category:category-1", "price:[0 TO 500]");
+        params.set("facet", "true");
+        params.set("spellcheck", "true");
+        params.set("spellcheck.count", "5");
+        params.set("echoParams", "all");
+        params.set("debug", "timing");
+        params.set("group", "true");
+
+        assertEquals(toMap(legacyComputeUnscoredSolrParams(params)),
+                toMap(SolrLocalResponseBuilder.computeUnscoredSolrParams(params)));
+    }
+
+    @Test
+    public void testComputeUnscoredSolrParams_keepsJsonFacets() {
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set("q", "boot");
+        params.set("json.facet", "{brands:{type:terms,field:brand}}");
+
+        ModifiableSolrParams unscored = SolrLocalResponseBuilder.computeUnscoredSolrParams(params);
+        assertEquals("{brands:{type:terms,field:brand}}", unscored.get("json.facet"));
+        assertEquals("false", unscored.get("facet"));
+    }
+
+    @Test
+    public void testFromNamedList() {
+        NamedList<Object> set = new NamedList<>();
+        set.add("rq.enable", false);
+        set.add("multi", Arrays.asList("1", "2"));
+        NamedList<Object> config = new NamedList<>();
+        config.add("remove", Arrays.asList("json.facet", "sort"));
+        config.add("removePrefix", "ltr.");
+        config.add("set", set);
+
+        SolrParamsRewriteRules rules = SolrLocalResponseBuilder.unscoredRules(config);
+
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set("q", "boot");
+        params.set("json.facet", "{}");
+        params.set("ltr.model", "m");
+        params.set("spellcheck.count", "5");
+        params.set("sort", "score desc");
+
+        ModifiableSolrParams result = rules.apply(params);
+        assertEquals("boot", result.get("q"));
+        assertNull(result.get("json.facet"));
+        assertNull(result.get("ltr.model"));
+        assertNull(result.get("sort"));
+        assertEquals("false", result.get("rq.enable"));
+        assertArrayEquals(new String[]{"1", "2"}, result.getParams("multi"));
+
+        // defaults
+        assertNull(result.get("spellcheck.count"));
+        assertEquals("0", result.get("rows"));
+    }
+
+    @Test
+    public void testFromNamedList_withoutDefaults() {
+        NamedList<Object> config = new NamedList<>();
+        config.add("remove", "a");
+        config.add("defaults", false);
+
+        SolrParamsRewriteRules rules = SolrLocalResponseBuilder.unscoredRules(config);
+
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set("a", "1");
+        params.set("rows", "10");
+        assertEquals(map("rows", "10"), toMap(rules.apply(params)));
+    }
+
+    @Test
+    public void testFromNamedList_null() {
+        assertSame(SolrLocalResponseBuilder.UNSCORED_RULES, SolrLocalResponseBuilder.unscoredRules(null));
+    }
+
+    @Test(expected = SolrException.class)
+    public void testFromNamedList_unknownEntry() {
+        NamedList<Object> config = new NamedList<>();
+        config.add("delete", "a");
+
+        SolrLocalResponseBuilder.unscoredRules(config);
+    }
+
+    @Test(expected = SolrException.class)
+    public void testFromNamedList_invalidSet() {
+        NamedList<Object> config = new NamedList<>();
+        config.add("set", "a");
+
+        SolrLocalResponseBuilder.unscoredRules(config);
+    }
+
+    @Test
+    public void testToBuilder() {
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set("boost.cache", "true");
+        params.set("spellcheck.count", "5");
+        params.set("sort", "score desc");
+        params.set("q", "boot");
+
+        assertEquals(toMap(SolrLocalResponseBuilder.UNSCORED_RULES.apply(params)),
+                toMap(SolrLocalResponseBuilder.UNSCORED_RULES.toBuilder().build().apply(params)));
+    }
+
+    @Test
+    public void testMemo() {
+        SolrParamsRewriteRules.Memo memo = SolrParamsRewriteRules.builder().remove("a").build().memo(2);
+
+        ModifiableSolrParams first = new ModifiableSolrParams();
+        first.set("a", "1");
+        first.set("b", "2");
+        ModifiableSolrParams second = new ModifiableSolrParams();
+        second.set("b", "2");
+        second.set("a", "1");
+
+        SolrParams result = memo.apply(first);
+        assertEquals(map("b", "2"), toMap(result));
+        assertSame(result, memo.apply(second));
+        assertEquals(1, memo.hitCount());
+        assertEquals(1, memo.missCount());
+
+        // modifying the incoming params after the first call does not affect the memo
+        first.set("b", "3");
+        assertEquals(map("b", "3"), toMap(memo.apply(first)));
+        assertSame(result, memo.apply(second));
+        assertEquals(2, memo.size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testMemo_readOnly() {
+        SolrParamsRewriteRules.Memo memo = SolrParamsRewriteRules.builder().build().memo(1);
+
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set("a", "1");
+        ((MultiMapSolrParams) memo.apply(params)).getMap().clear();
+    }
+
+    @Test
+    public void testMemo_eviction() {
+        SolrParamsRewriteRules.Memo memo = SolrParamsRewriteRules.builder().build().memo(1);
+
+        ModifiableSolrParams first = new ModifiableSolrParams();
+        first.set("a", "1");
+        ModifiableSolrParams second = new ModifiableSolrParams();
+        second.set("a", "2");
+
+        memo.apply(first);
+        memo.apply(second);
+        memo.apply(first);
+        assertEquals(1, memo.size());
+        assertEquals(0, memo.hitCount());
+    }
+
+    //
+    // Helper
+    //
+
+    /**
+     * Map of alternating names and comma separated values.
+     */
+    private static Map<String, String> map(String... namesAndValues) {
+        Map<String, String> result = new HashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            result.put(namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return result;
+    }
+
+    private static Map<String, String> toMap(SolrParams params) {
+        Map<String, String> result = new HashMap<>();
+        params.forEach(entry -> result.put(entry.getKey(), String.join(",", Arrays.asList(entry.getValue()))));
+        return result;
+    }
+
+    /**
+     * Implementation of {@link SolrLocalResponseBuilder#computeUnscoredSolrParams(SolrParams)}
+     * before it was based on {@link SolrParamsRewriteRules}.
+     */
+    private static ModifiableSolrParams legacyComputeUnscoredSolrParams(SolrParams origParams) {
+        ModifiableSolrParams params = new ModifiableSolrParams(origParams);
+        params.remove(CommonParams.START);
+        params.set(CommonParams.FL, "id");
+        params.set(CommonParams.ROWS, "0");
+        params.remove(CommonParams.DEBUG);
+        params.remove(CommonParams.HEADER_ECHO_PARAMS);
+        params.remove(GroupParams.GROUP);
+        params.remove(DisMaxParams.BF);
+        params.remove(DisMaxParams.BQ);
+        params.remove("boost");
+        params.remove("rq");
+        params.remove("rrq");
+        params.remove(DisMaxParams.PF);
+        params.remove(DisMaxParams.PF2);
+        params.remove(DisMaxParams.PF3);
+        params.remove(DisMaxParams.PS);
+        params.remove(DisMaxParams.PS2);
+        params.remove(DisMaxParams.PS3);
+        params.set("enableElevation", "false");
+        params.set("forceElevation", "false");
+        params.set("spellcheck", "false");
+        params.set(FacetParams.FACET, "false");
+        params.set("collapse", "false");
+        params.set("collapse.enable", "false");
+        params.set("expand", "false");
+        params.set("expand.append", "false");
+        params.set("ranking.barkeeper", "false");
+        params.set("facet.cache.static", "false");
+        params.set("boost.cache", "false");
+        params.set("bq.cache", "false");
+        params.remove(CommonParams.SORT);
+        params.set(CommonParams.SORT, "_docid_ asc");
+        Set<String> waste = Sets.newHashSet(params.getParameterNames());
+        for (String param : waste) {
+            if (param.startsWith("spellcheck.") || param.startsWith("bmax.") || param.startsWith("boost.")) {
+                params.remove(param);
+            }
+        }
+        return params;
+    }
+}
@@ -0,0 +1,156 @@
+package cool.solr.search.component.solr.util;
+
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.handler.component.SearchComponent;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.request.SolrRequestInfo;
+import org.apache.solr.response.SolrQueryResponse;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Search components observing and controlling the execution of sub-requests in tests.
+ */
+final class TestComponents {
+
+    private TestComponents() {
+    }
+
+    /**
+     * Records the request info seen by each sub-request and registers a close hook on it.
+     */
+    static class RequestInfoComponent extends SearchComponent {
+        final ConcurrentLinkedQueue<SolrQueryRequest> requests = new ConcurrentLinkedQueue<>();
+        final AtomicInteger closedHooks = new AtomicInteger();
+
+        @Override
+        public void prepare(ResponseBuilder rb) {
+            // no-op
+        }
+
+        @Override
+        public void process(ResponseBuilder rb) {
+            SolrRequestInfo info = SolrRequestInfo.getRequestInfo();
+            requests.add(info.getReq());
+            info.addCloseHook(closedHooks::incrementAndGet);
+        }
+
+        @Override
+        public String getDescription() {
+            return "request info";
+        }
+    }
+
+    /**
+     * Blocks in process until released.
+     */
+    static class BlockingComponent extends SearchComponent {
+        private final CountDownLatch blocked;
+        private final CountDownLatch release;
+
+        BlockingComponent(CountDownLatch blocked, CountDownLatch release) {
+            this.blocked = blocked;
+            this.release = release;
+        }
+
+        @Override
+        public void prepare(ResponseBuilder rb) {
+            // no-op
+        }
+
+        @Override
+        public void process(ResponseBuilder rb) throws IOException {
+            blocked.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public String getDescription() {
+            return "blocking";
+        }
+    }
+
+    /**
+     * Sleeps in prepare and records whether process ran.
+     */
+    static class SlowComponent extends SearchComponent {
+        final AtomicInteger processed = new AtomicInteger();
+        private final long millis;
+
+        SlowComponent(long millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public void prepare(ResponseBuilder rb) throws IOException {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void process(ResponseBuilder rb) {
+            processed.incrementAndGet();
+        }
+
+        @Override
+        public String getDescription() {
+            return "slow";
+        }
+    }
+
+    /**
+     * Counts the executions of process.
+     */
+    static class CountingComponent extends SearchComponent {
+        final AtomicInteger processed = new AtomicInteger();
+
+        @Override
+        public void prepare(ResponseBuilder rb) {
+            // no-op
+        }
+
+        @Override
+        public void process(ResponseBuilder rb) {
+            processed.incrementAndGet();
+        }
+
+        @Override
+        public String getDescription() {
+            return "counting";
+        }
+    }
+
+    /**
+     * Marks the response as partial in process, like a query running out of time does.
+     */
+    static class PartialResultsComponent extends CountingComponent {
+
+        @Override
+        public void process(ResponseBuilder rb) {
+            super.process(rb);
+            if (rb.rsp.getResponseHeader() == null) {
+                rb.rsp.addResponseHeader(new SimpleOrderedMap<>());
+            }
+            rb.rsp.getResponseHeader().add(SolrQueryResponse.RESPONSE_HEADER_PARTIAL_RESULTS_KEY, Boolean.TRUE);
+        }
+
+        @Override
+        public String getDescription() {
+            return "partial results";
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cool.solr.search.solr.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.solr.common.util.NamedList;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IndexedNamedListTest {
+
+   NamedList<Object> underlyingList;
+   NamedList<Object> nested;
+
+   List<Integer> javaList = Arrays.asList(1, 2, 3);
+
+   @Before
+   public void setUp() {
+      nested = new NamedList<>();
+      for (int i = 0; i < 100; i++) {
+         nested.add("value-" + i, "str-" + i);
+      }
+      nested.add("value-1", "duplicate");
+      nested.add("list", javaList);
+      nested.add("none", null);
+      nested.add(null, "null name");
+
+      underlyingList = new NamedListBuilder<>()
+            .add("nested", nested)
+            .add("str", "foo")
+            .build();
+   }
+
+   @Test
+   public void testGet() throws Exception {
+      IndexedNamedList list = new IndexedNamedList(underlyingList, 10);
+      assertFalse(list.isIndexed());
+      assertEquals("foo", list.getString("str"));
+
+      ConvenientNamedList indexed = list.getNested("nested");
+      assertTrue(indexed instanceof IndexedNamedList);
+      assertTrue(((IndexedNamedList) indexed).isIndexed());
+      assertSame(nested, indexed.getNamedList());
+
+      for (int i = 0; i < 100; i++) {
+         assertEquals(nested.get("value-" + i), indexed.getString("value-" + i));
+      }
+      assertSame(javaList, indexed.getList("list"));
+      assertNull(indexed.getString("none"));
+      assertNull(indexed.getString("does-not-exist"));
+      assertEquals("null name", indexed.getString(null));
+   }
+
+   @Test
+   public void testGet_firstOccurrence() throws Exception {
+      assertEquals("str-1", new IndexedNamedList(nested, 10).getString("value-1"));
+   }
+
+   @Test
+   public void testGetNested() throws Exception {
+      IndexedNamedList list = new IndexedNamedList(underlyingList, 1);
+
+      assertSame(nested, list.getNested("nested").getNamedList());
+      assertEquals(0, list.getNested("nested", "value-1", "x").size());
+      assertEquals(0, list.getNested("nested", "none", "x").size());
+      assertEquals(0, list.getNested("does-not-exist", "value-1").size());
+      assertEquals(0, list.getNested().size());
+      assertSame(nested, list.getNested(0).getNamedList());
+   }
+
+   @Test
+   public void testGetNested_sharedIndex() throws Exception {
+      IndexedNamedList list = new IndexedNamedList(underlyingList, 1);
+
+      IndexedNamedList first = (IndexedNamedList) list.getNested("nested");
+      first.getString("value-1");
+      IndexedNamedList second = (IndexedNamedList) list.getNested("nested");
+      assertSame(first.index(), second.index());
+   }
+
+   @Test(expected = NamedListEntryClassCastException.class)
+   public void testGetNested_wrongClass() throws Exception {
+      new IndexedNamedList(underlyingList, 1).getNested("nested", "value-1");
+   }
+
+   @Test(expected = NamedListEntryClassCastException.class)
+   public void testGet_wrongClass() throws Exception {
+      new IndexedNamedList(nested, 10).getList("value-1");
+   }
+
+   @Test
+   public void testNull() throws Exception {
+      IndexedNamedList list = new IndexedNamedList(null);
+
+      assertFalse(list.isIndexed());
+      assertNull(list.getString("str"));
+      assertEquals(0, list.getNested("nested").size());
+   }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package cool.solr.search.solr.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.apache.solr.common.util.NamedList;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NamedListPathTest {
+
+   NamedList<Object> list;
+   NamedList<Object> nested;
+
+   @Before
+   public void setUp() {
+      list = new NamedListBuilder<>()
+            .add("header", "foo")
+            .add("nested", nested = new NamedListBuilder<>()
+                  .add("a", 1)
+                  .add("b", 2)
+                  .add("str", "hello")
+                  .add("none", null)
+                  .build())
+            .build();
+   }
+
+   @Test
+   public void testGet() throws Exception {
+      NamedListPath<String> path = NamedListPath.compile(String.class, "nested", "str");
+
+      assertEquals("hello", path.get(list));
+      assertArrayEquals(new int[] { 1, 2 }, path.hints());
+
+      // again, using the remembered indexes
+      assertEquals("hello", path.get(list));
+      assertSame(nested, NamedListPath.compile(NamedList.class, "nested").get(list));
+   }
+
+   @Test
+   public void testGet_sameAsNamedLists() throws Exception {
+      String[][] paths = { {}, { "header" }, { "header", "foo" }, { "nested", "none" }, { "nested", "none", "x" },
+            { "nested", "does-not-exist" }, { "does-not-exist", "a" } };
+
+      for (String[] names : paths) {
+         assertEquals(NamedLists.get(list, Object.class, names), NamedListPath.compile(Object.class, names).get(list));
+      }
+      assertNull(NamedListPath.compile(Object.class, "nested").get(null));
+   }
+
+   @Test
+   public void testGet_changedShape() throws Exception {
+      NamedListPath<Integer> path = NamedListPath.compile(Integer.class, "nested", "b");
+      assertEquals(Integer.valueOf(2), path.get(list));
+
+      nested.remove("a");
+      assertEquals(Integer.valueOf(2), path.get(list));
+      assertArrayEquals(new int[] { 1, 0 }, path.hints());
+
+      nested.remove("b");
+      assertNull(path.get(list));
+
+      nested.add("b", 3);
+      assertEquals(Integer.valueOf(3), path.get(list));
+   }
+
+   @Test
+   public void testGet_namesAreCompared() throws Exception {
+      NamedListPath<String> path = NamedListPath.compile(String.class, new String("nested"), new String("str"));
+
+      assertEquals("hello", path.get(list));
+      assertEquals("hello", path.get(list));
+   }
+
+   @Test(expected = NamedListEntryClassCastException.class)
+   public void testGet_wrongClass() throws Exception {
+      NamedListPath.compile(Integer.class, "nested", "str").get(list);
+   }
+
+   @Test
+   public void testToString() throws Exception {
+      assertEquals("nested.str (String)", NamedListPath.compile(String.class, "nested", "str").toString());
+   }
+}
@@ -26,6 +26,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
@@ -305,4 +306,88 @@ public class NamedListsTest {
    public void testgetIndex_invalidIndex() throws Exception {
       NamedLists.get(list, String.class, 42);
    }
+
+   @Test
+   public void testWalk() throws Exception {
+      List<String> events = new ArrayList<>();
+      NamedLists.walk(list, new RecordingVisitor(events, null));
+
+      assertEquals(Arrays.asList(
+            "enter null",
+            "enter nested",
+            "enter deeplyNested",
+            "entry greeting=hello",
+            "leave deeplyNested",
+            "entry none=null",
+            "entry str=foo",
+            "entry list=[1, 2, 3]",
+            "entry set=" + javaSet,
+            "leave nested",
+            "entry none=null",
+            "leave null"), events);
+   }
+
+   @Test
+   public void testWalk_skip() throws Exception {
+      List<String> events = new ArrayList<>();
+      NamedLists.walk(list, new RecordingVisitor(events, "nested"));
+
+      assertEquals(Arrays.asList("enter null", "enter nested", "entry none=null", "leave null"), events);
+   }
+
+   @Test
+   public void testWalk_deeplyNested() throws Exception {
+      NamedList<Object> root = new NamedList<>();
+      NamedList<Object> current = root;
+      for (int i = 0; i < 20; i++) {
+         NamedList<Object> child = new NamedList<>();
+         current.add("level-" + i, child);
+         current = child;
+      }
+      current.add("leaf", 42);
+
+      List<String> events = new ArrayList<>();
+      NamedLists.walk(root, new RecordingVisitor(events, null));
+
+      assertEquals(43, events.size());
+      assertEquals("entry leaf=42", events.get(21));
+      assertEquals("leave level-0", events.get(41));
+   }
+
+   @Test
+   public void testWalk_null() throws Exception {
+      List<String> events = new ArrayList<>();
+      NamedLists.walk(null, new RecordingVisitor(events, null));
+
+      assertEquals(0, events.size());
+   }
+
+   /**
+    * Records all events as strings and skips lists of the given name.
+    */
+   private static class RecordingVisitor implements NamedListVisitor {
+      private final List<String> events;
+      private final String skip;
+
+      RecordingVisitor(List<String> events, String skip) {
+         this.events = events;
+         this.skip = skip;
+      }
+
+      @Override
+      public boolean enterList(String name, NamedList<?> namedList) {
+         events.add("enter " + name);
+         return skip == null || !skip.equals(name);
+      }
+
+      @Override
+      public void entry(String name, Object value) {
+         events.add("entry " + name + "=" + value);
+      }
+
+      @Override
+      public void leaveList(String name, NamedList<?> namedList) {
+         events.add("leave " + name);
+      }
+   }
 }
@@ -0,0 +1,123 @@
+package cool.solr.search.solr.util.analyzing;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AnalysisCacheTest {
+
+    private Analyzer analyzer;
+
+    @Before
+    public void setUp() {
+        analyzer = new StandardAnalyzer();
+    }
+
+    @After
+    public void tearDown() {
+        analyzer.close();
+    }
+
+    @Test
+    public void testAnalyze() throws Exception {
+        AnalysisCache cache = new AnalysisCache(10, 1000);
+
+        List<String> result = cache.analyze(analyzer, "Red Boots");
+        assertEquals(Arrays.asList("red", "boots"), result);
+        assertEquals(0, cache.hitCount());
+        assertEquals(1, cache.missCount());
+
+        assertSame(result, cache.analyze(analyzer, "Red Boots"));
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.size());
+        assertEquals(9 + 8, cache.weight());
+    }
+
+    @Test
+    public void testAnalyzeTokens() throws Exception {
+        AnalysisCache cache = new AnalysisCache(10, 1000);
+
+        List<Token> result = cache.analyzeTokens(analyzer, "Red Boots");
+        assertEquals(Analyzers.analyzeTokens(analyzer, "Red Boots"), result);
+        assertSame(result, cache.analyzeTokens(analyzer, "Red Boots"));
+
+        // strings and tokens are cached separately
+        assertEquals(Arrays.asList("red", "boots"), cache.analyze(analyzer, "Red Boots"));
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.missCount());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() throws Exception {
+        new AnalysisCache(10, 1000).analyze(analyzer, "Red Boots").clear();
+    }
+
+    @Test
+    public void testAnalyzerIdentity() throws Exception {
+        AnalysisCache cache = new AnalysisCache(10, 1000);
+
+        try (Analyzer other = new StandardAnalyzer()) {
+            cache.analyze(analyzer, "Red Boots");
+            cache.analyze(other, "Red Boots");
+        }
+
+        assertEquals(2, cache.size());
+        assertEquals(0, cache.hitCount());
+    }
+
+    @Test
+    public void testEvictionBySize() throws Exception {
+        AnalysisCache cache = new AnalysisCache(2, 1000);
+
+        cache.analyze(analyzer, "a");
+        cache.analyze(analyzer, "b");
+        cache.analyze(analyzer, "a");
+        cache.analyze(analyzer, "c");
+
+        // b was least recently used
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictionCount());
+        cache.analyze(analyzer, "a");
+        cache.analyze(analyzer, "c");
+        assertEquals(3, cache.hitCount());
+        cache.analyze(analyzer, "b");
+        assertEquals(4, cache.missCount());
+    }
+
+    @Test
+    public void testEvictionByWeight() throws Exception {
+        AnalysisCache cache = new AnalysisCache(100, 20);
+
+        cache.analyze(analyzer, "red");
+        cache.analyze(analyzer, "blue");
+        assertEquals(14, cache.weight());
+
+        cache.analyze(analyzer, "green");
+        assertEquals(1, cache.evictionCount());
+        assertEquals(18, cache.weight());
+
+        // too heavy to be cached at all
+        cache.analyze(analyzer, "a very long input string");
+        assertEquals(2, cache.size());
+        assertEquals(18, cache.weight());
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        AnalysisCache cache = new AnalysisCache(10, 1000);
+        cache.analyze(analyzer, "Red Boots");
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weight());
+        assertEquals(1, cache.missCount());
+    }
+}
@@ -0,0 +1,70 @@
+package cool.solr.search.solr.util.analyzing;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AnalysisContextTest {
+
+    private Analyzer analyzer;
+    private AnalysisContext context;
+
+    @Before
+    public void setUp() {
+        analyzer = new StandardAnalyzer();
+        context = new AnalysisContext(analyzer);
+    }
+
+    @After
+    public void tearDown() {
+        analyzer.close();
+    }
+
+    @Test
+    public void testAnalyze() throws Exception {
+        assertEquals(Analyzers.analyze(analyzer, "Red Leather-Boots"), context.analyze("Red Leather-Boots"));
+
+        // results are reused
+        List<String> result = context.analyze("Blue Jeans");
+        assertEquals(Arrays.asList("blue", "jeans"), result);
+        assertSame(result, context.analyze("green"));
+        assertEquals(Arrays.asList("green"), result);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testAnalyze_readOnly() throws Exception {
+        context.analyze("Blue Jeans").clear();
+    }
+
+    @Test
+    public void testAnalyzeTokens() throws Exception {
+        assertEquals(Analyzers.analyzeTokens(analyzer, "Red Leather-Boots"), context.analyzeTokens("Red Leather-Boots").tokens());
+        assertEquals(Analyzers.analyzeTokens(analyzer, "Blue"), context.analyzeTokens("Blue").tokens());
+    }
+
+    @Test
+    public void testThreadLocal() throws Exception {
+        ThreadLocal<AnalysisContext> contexts = AnalysisContext.threadLocal(analyzer);
+
+        assertSame(contexts.get(), contexts.get());
+        assertSame(analyzer, contexts.get().getAnalyzer());
+    }
+
+    @Test
+    public void testTrimToNull() throws Exception {
+        try (Analyzer whitespace = new WhitespaceAnalyzer()) {
+            assertEquals(Analyzers.analyze(whitespace, " a  b\tc "), new AnalysisContext(whitespace).analyze(" a  b\tc "));
+        }
+        assertEquals("a b", AnalysisContext.trimToNull(" a b \u0000".toCharArray(), 6));
+        assertNull(AnalysisContext.trimToNull("  ".toCharArray(), 2));
+        assertNull(AnalysisContext.trimToNull(new char[0], 0));
+    }
+}
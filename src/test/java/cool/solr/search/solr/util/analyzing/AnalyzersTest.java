@@ -0,0 +1,115 @@
+package cool.solr.search.solr.util.analyzing;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class AnalyzersTest {
+
+    private Analyzer analyzer;
+
+    @Before
+    public void setUp() {
+        analyzer = new StandardAnalyzer();
+    }
+
+    @After
+    public void tearDown() {
+        analyzer.close();
+    }
+
+    @Test
+    public void testAnalyze() throws Exception {
+        assertEquals(Arrays.asList("red", "leather", "boots"), Analyzers.analyze(analyzer, "Red Leather-Boots"));
+        assertEquals("red_leather_boots", Analyzers.analyze(analyzer, "Red Leather-Boots", "_"));
+        assertTrue(Analyzers.analyze(analyzer, " ").isEmpty());
+    }
+
+    @Test
+    public void testAnalyzeTokens() throws Exception {
+        List<Token> tokens = Analyzers.analyzeTokens(analyzer, "Red Leather-Boots");
+
+        assertEquals(3, tokens.size());
+        assertEquals("leather", tokens.get(1).getName());
+        assertEquals("<ALPHANUM>", tokens.get(1).getType());
+        assertEquals(new Position(4, 11, 1), tokens.get(1).getPosition());
+        assertEquals(1, (int) tokens.get(1).getPosition().getWordPosition());
+        assertEquals(2, (int) tokens.get(2).getPosition().getWordPosition());
+    }
+
+    @Test
+    public void testForEachToken() throws Exception {
+        List<String> terms = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+
+        Analyzers.forEachToken(analyzer, "Red Leather-Boots", (term, type, startOffset, endOffset, position, positionLength) -> {
+            terms.add(term.toString());
+            positions.add(position);
+            assertEquals(term.length(), endOffset - startOffset);
+            assertEquals(1, positionLength);
+        });
+
+        assertEquals(Arrays.asList("red", "leather", "boots"), terms);
+        assertEquals(Arrays.asList(0, 1, 2), positions);
+    }
+
+    @Test
+    public void testAnalyzeAll() throws Exception {
+        List<String> inputs = Arrays.asList("Red Leather-Boots", " ", "Blue Jeans");
+
+        List<List<String>> result = Analyzers.analyzeAll(analyzer, inputs);
+        assertEquals(3, result.size());
+        for (int i = 0; i < inputs.size(); i++) {
+            assertEquals(Analyzers.analyze(analyzer, inputs.get(i)), result.get(i));
+        }
+    }
+
+    @Test
+    public void testAnalyzeAll_parallel() throws Exception {
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            inputs.add("Input " + i);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<List<String>> result = Analyzers.analyzeAll(analyzer, new LinkedHashSet<>(inputs), pool);
+            assertEquals(1000, result.size());
+            for (int i = 0; i < inputs.size(); i++) {
+                assertEquals(Arrays.asList("input", Integer.toString(i)), result.get(i));
+            }
+
+            assertTrue(Analyzers.analyzeAll(analyzer, Collections.emptyList(), pool).isEmpty());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testAnalyzeField() throws Exception {
+        Analyzer perField = new PerFieldAnalyzerWrapper(analyzer,
+                Collections.singletonMap("keyword", new KeywordAnalyzer()));
+
+        assertEquals(Arrays.asList("Red Boots"), Analyzers.analyzeField(perField, "keyword", "Red Boots"));
+        assertEquals(Arrays.asList("red", "boots"), Analyzers.analyzeField(perField, "title", "Red Boots"));
+        assertEquals(Arrays.asList("red", "boots"), Analyzers.analyze(perField, "Red Boots"));
+
+        assertEquals("Red Boots", Analyzers.analyzeFieldTokens(perField, "keyword", "Red Boots").get(0).getName());
+        assertEquals("Red Boots", Analyzers.analyzeTokens(perField, "keyword", "Red Boots", new TokenBuffer()).term(0));
+        assertEquals("Red Boots", new AnalysisContext(perField, "keyword").analyze("Red Boots").get(0));
+        assertEquals("Red Boots", new AnalysisCache(10, 100).analyzeField(perField, "keyword", "Red Boots").get(0));
+    }
+}
@@ -59,4 +59,38 @@ public class PositionTest {
         assertTrue(fifth.contains(first));
     }
 
+    @Test
+    public void testBoxedAndPrimitiveAccessors() {
+        Position boxed = new Position(Integer.valueOf(4), Integer.valueOf(10), Integer.valueOf(1));
+        Position primitive = new Position(4, 10, 1);
+
+        assertEquals(boxed, primitive);
+        assertEquals(Integer.valueOf(4), boxed.getStart());
+        assertEquals(Integer.valueOf(10), boxed.getEnd());
+        assertEquals(Integer.valueOf(1), boxed.getWordPosition());
+        assertEquals(4, primitive.getStartAsInt());
+        assertEquals(10, primitive.getEndAsInt());
+        assertEquals(1, primitive.getWordPositionAsInt());
+    }
+
+    @Test
+    public void testBoxedConstructor_null() {
+        assertNullRejected("start", () -> new Position(null, Integer.valueOf(10), Integer.valueOf(1)));
+        assertNullRejected("end", () -> new Position(Integer.valueOf(4), null, Integer.valueOf(1)));
+        assertNullRejected("wordPosition", () -> new Position(Integer.valueOf(4), Integer.valueOf(10), null));
+        assertNullRejected("tokenCount", () -> new Token("term", new Position(4, 10, 1), (Integer) null));
+    }
+
+    //
+    // Helper
+    //
+
+    private static void assertNullRejected(String argument, Runnable constructor) {
+        try {
+            constructor.run();
+            fail();
+        } catch (NullPointerException e) {
+            assertEquals("Pre-condition violated: " + argument + " must not be null.", e.getMessage());
+        }
+    }
 }
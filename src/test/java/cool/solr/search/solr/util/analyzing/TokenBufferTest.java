@@ -0,0 +1,95 @@
+package cool.solr.search.solr.util.analyzing;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TokenBufferTest {
+
+    @Test
+    public void testAccept() {
+        TokenBuffer buffer = new TokenBuffer();
+        buffer.accept("red", "word", 0, 3, 0, 1);
+        buffer.accept(new StringBuilder("boots"), "word", 4, 9, 1, 1);
+
+        assertEquals(2, buffer.size());
+        assertEquals("red", buffer.term(0));
+        assertEquals("boots", buffer.term(1));
+        assertEquals(3, buffer.termOffset(1));
+        assertEquals(5, buffer.termLength(1));
+        assertEquals("redboots", new String(buffer.termBuffer(), 0, 8));
+        assertEquals(4, buffer.startOffset(1));
+        assertEquals(9, buffer.endOffset(1));
+        assertEquals(1, buffer.position(1));
+        assertEquals(1, buffer.positionLength(1));
+        assertEquals("word", buffer.type(1));
+    }
+
+    @Test
+    public void testGrow() {
+        TokenBuffer buffer = new TokenBuffer();
+        for (int i = 0; i < 1000; i++) {
+            buffer.accept("term" + i, null, i, i + 1, i, 1);
+        }
+
+        assertEquals(1000, buffer.size());
+        assertEquals("term0", buffer.term(0));
+        assertEquals("term999", buffer.term(999));
+        assertEquals(999, buffer.position(999));
+    }
+
+    @Test
+    public void testTokens() {
+        TokenBuffer buffer = new TokenBuffer();
+        buffer.accept("red", "word", 0, 3, 0, 1);
+
+        Token token = buffer.token(0);
+        assertEquals("red", token.getName());
+        assertEquals("word", token.getType());
+        assertEquals(new Position(0, 3, 0), token.getPosition());
+        assertEquals(1, token.getTokenCountAsInt());
+        assertSame("views should be created once", token, buffer.token(0));
+        assertSame(token, buffer.tokens().get(0));
+    }
+
+    @Test
+    public void testClear() {
+        TokenBuffer buffer = new TokenBuffer();
+        buffer.accept("red", "word", 0, 3, 0, 1);
+        Token token = buffer.token(0);
+
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertTrue(buffer.tokens().isEmpty());
+
+        buffer.accept("blue", "word", 0, 4, 0, 1);
+        assertEquals("blue", buffer.term(0));
+        assertEquals("blue", buffer.token(0).getName());
+        assertEquals("red", token.getName());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testInvalidIndex() {
+        new TokenBuffer().term(0);
+    }
+
+    @Test
+    public void testAnalyzeTokens() throws Exception {
+        try (Analyzer analyzer = new StandardAnalyzer()) {
+            TokenBuffer buffer = new TokenBuffer();
+            List<Token> expected = Analyzers.analyzeTokens(analyzer, "Red Leather-Boots");
+
+            assertSame(buffer, Analyzers.analyzeTokens(analyzer, "Red Leather-Boots", buffer));
+            assertEquals(expected, buffer.tokens());
+
+            // reuse
+            Analyzers.analyzeTokens(analyzer, "Blue", buffer);
+            assertEquals(1, buffer.size());
+            assertEquals("blue", buffer.term(0));
+        }
+    }
+}